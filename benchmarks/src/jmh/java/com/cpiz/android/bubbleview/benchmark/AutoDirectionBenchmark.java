@@ -0,0 +1,61 @@
+package com.cpiz.android.bubbleview.benchmark;
+
+import com.cpiz.android.bubbleview.core.BubblePlacement;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 箭头自动方向计算，目标在气泡四周及重叠位置上遍历
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AutoDirectionBenchmark {
+    private static final int GRID = 16;
+    private static final int CASES = GRID * GRID;
+
+    private static final int BUBBLE_LEFT = 400;
+    private static final int BUBBLE_TOP = 800;
+    private static final int BUBBLE_RIGHT = 700;
+    private static final int BUBBLE_BOTTOM = 950;
+
+    // 每个用例依次为 targetLeft, targetTop, targetRight, targetBottom
+    private final int[] mTargets = new int[CASES * 4];
+
+    @Setup
+    public void setup() {
+        int i = 0;
+        for (int gx = 0; gx < GRID; gx++) {
+            for (int gy = 0; gy < GRID; gy++) {
+                final int left = gx * 1080 / GRID;
+                final int top = gy * 1920 / GRID;
+                mTargets[i++] = left;
+                mTargets[i++] = top;
+                mTargets[i++] = left + 80;
+                mTargets[i++] = top + 80;
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CASES)
+    public void getAutoArrowDirection(Blackhole blackhole) {
+        final int[] targets = mTargets;
+        for (int i = 0; i < targets.length; i += 4) {
+            blackhole.consume(BubblePlacement.getAutoArrowDirection(BUBBLE_LEFT, BUBBLE_TOP, BUBBLE_RIGHT, BUBBLE_BOTTOM,
+                    targets[i], targets[i + 1], targets[i + 2], targets[i + 3]));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.cpiz.android.bubbleview.benchmark;
+
+import com.cpiz.android.bubbleview.core.BubbleGeometry;
+import com.cpiz.android.bubbleview.core.BubbleShape;
+import com.cpiz.android.bubbleview.core.PathBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 形状与箭头顶点计算、路径指令生成，覆盖所有箭头方向与位置策略组合
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GeometryBenchmark {
+    @Param({"-1", "1", "2", "3", "4"})
+    public int direction;
+
+    @Param({"0", "1", "2", "3"})
+    public int policy;
+
+    private final BubbleGeometry mGeometry = new BubbleGeometry();
+    private final PathBuffer mPathBuffer = new PathBuffer();
+    private float mArrowToX = 0;
+
+    @Setup
+    public void setup() {
+        BubbleShape shape = mGeometry.getOriginalShape();
+        shape.Rect.set(0, 0, 540, 180);
+        shape.BorderWidth = 3;
+        shape.ArrowHeight = 18;
+        shape.ArrowWidth = 27;
+        shape.ArrowDelta = 30;
+        shape.TopLeftRadius = shape.TopRightRadius = shape.BottomLeftRadius = shape.BottomRightRadius = 12;
+        mGeometry.setFillPadding(6);
+        mGeometry.setArrowDirection(direction);
+        mGeometry.setArrowPosPolicy(policy);
+    }
+
+    @Benchmark
+    public BubbleShape updateShapes() {
+        // 每次改变目标位置，避免计算被视为不变量
+        mArrowToX = mArrowToX > 200 ? -200 : mArrowToX + 1;
+        mGeometry.setArrowTo(mArrowToX, mArrowToX / 2);
+        mGeometry.updateShapes();
+        return mGeometry.getFillShape();
+    }
+
+    @Benchmark
+    public PathBuffer updateShapesAndBuildPaths() {
+        mArrowToX = mArrowToX > 200 ? -200 : mArrowToX + 1;
+        mGeometry.setArrowTo(mArrowToX, mArrowToX / 2);
+        mGeometry.updateShapes();
+        mGeometry.buildBorderPath(mPathBuffer);
+        mGeometry.buildFillPath(mPathBuffer);
+        return mPathBuffer;
+    }
+}
@@ -0,0 +1,102 @@
+package com.cpiz.android.bubbleview.benchmark;
+
+import com.cpiz.android.bubbleview.core.BubblePlacement;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 弹窗摆放计算，在锚点位置与内容尺寸的网格上遍历
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PlacementBenchmark {
+    private static final int SCREEN_WIDTH = 1080;
+    private static final int SCREEN_HEIGHT = 1920;
+    private static final int NAVIGATION_BAR_HEIGHT = 126;
+    private static final int PADDING = 6;
+    private static final int GRID = 8;
+    private static final int CASES = GRID * GRID * 4;
+
+    @Param({"0", "1", "2", "3", "4"})
+    public int horizontalRelate;
+
+    @Param({"0", "1", "2", "3", "4"})
+    public int verticalRelate;
+
+    // 每个用例依次为 anchorLeft, anchorTop, anchorRight, anchorBottom, contentWidth, contentHeight
+    private final int[] mCases = new int[CASES * 6];
+    private final BubblePlacement.PopupProp mProp = new BubblePlacement.PopupProp();
+
+    @Setup
+    public void setup() {
+        final int[][] contentSizes = {{120, 60}, {400, 120}, {800, 300}, {1200, 600}};
+        int i = 0;
+        for (int gx = 0; gx < GRID; gx++) {
+            for (int gy = 0; gy < GRID; gy++) {
+                for (int[] size : contentSizes) {
+                    final int left = gx * SCREEN_WIDTH / GRID;
+                    final int top = gy * SCREEN_HEIGHT / GRID;
+                    mCases[i++] = left;
+                    mCases[i++] = top;
+                    mCases[i++] = left + 96;
+                    mCases[i++] = top + 48;
+                    mCases[i++] = size[0];
+                    mCases[i++] = size[1];
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CASES)
+    public void getPopupProp(Blackhole blackhole) {
+        final int[] cases = mCases;
+        final BubblePlacement.PopupProp prop = mProp;
+        for (int i = 0; i < cases.length; i += 6) {
+            BubblePlacement.getPopupProp(SCREEN_WIDTH, SCREEN_HEIGHT, NAVIGATION_BAR_HEIGHT,
+                    cases[i], cases[i + 1], cases[i + 2], cases[i + 3], cases[i + 4], cases[i + 5],
+                    horizontalRelate, verticalRelate, 8, 8, PADDING, prop);
+            blackhole.consume(prop.x + prop.y + prop.gravity + prop.maxWidth);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CASES)
+    public void getPopupPropOfX(Blackhole blackhole) {
+        final int[] cases = mCases;
+        final BubblePlacement.PopupProp prop = mProp;
+        for (int i = 0; i < cases.length; i += 6) {
+            prop.gravity = 0;
+            BubblePlacement.getPopupPropOfX(SCREEN_WIDTH, cases[i], cases[i + 2], cases[i + 4],
+                    horizontalRelate, 8, PADDING, prop);
+            blackhole.consume(prop.x + prop.gravity);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CASES)
+    public void getPopupPropOfY(Blackhole blackhole) {
+        final int[] cases = mCases;
+        final BubblePlacement.PopupProp prop = mProp;
+        for (int i = 0; i < cases.length; i += 6) {
+            prop.gravity = 0;
+            BubblePlacement.getPopupPropOfY(SCREEN_HEIGHT, NAVIGATION_BAR_HEIGHT, cases[i + 1], cases[i + 3],
+                    verticalRelate, 8, prop);
+            blackhole.consume(prop.y + prop.gravity);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.cpiz.android.bubbleview.core;
+
+/**
+ * 单通道（透明度）图像的近似高斯模糊
+ * 以三次盒式模糊逼近高斯分布，每次模糊按行、按列各做一遍滑动窗口求和，耗时与模糊半径无关
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+public final class BoxBlur {
+    private static final int PASSES = 3;
+
+    private BoxBlur() {
+    }
+
+    /**
+     * 原地模糊，图像边界外视为透明
+     *
+     * @param pixels 像素数据，每像素一字节
+     * @param width  宽度
+     * @param height 高度
+     * @param stride 每行字节数，不小于宽度
+     * @param sigma  高斯分布的标准差，像素
+     */
+    public static void blur(byte[] pixels, int width, int height, int stride, float sigma) {
+        if (sigma <= 0 || width <= 0 || height <= 0) {
+            return;
+        }
+
+        final int[] sizes = boxSizes(sigma, PASSES);
+        final byte[] temp = new byte[pixels.length];
+        for (int size : sizes) {
+            final int radius = (size - 1) / 2;
+            blurHorizontal(pixels, temp, width, height, stride, radius);
+            blurVertical(temp, pixels, width, height, stride, radius);
+        }
+    }
+
+    /**
+     * 计算逼近指定标准差高斯分布的各次盒式模糊窗口大小（奇数）
+     */
+    static int[] boxSizes(float sigma, int passes) {
+        final double idealWidth = Math.sqrt(12 * sigma * sigma / passes + 1);
+        int lower = (int) Math.floor(idealWidth);
+        if (lower % 2 == 0) {
+            lower--;
+        }
+        final int upper = lower + 2;
+        final double idealCount = (12 * sigma * sigma - passes * lower * lower - 4 * passes * lower - 3 * passes)
+                / (-4 * lower - 4);
+        final long count = Math.round(idealCount);
+
+        final int[] sizes = new int[passes];
+        for (int i = 0; i < passes; i++) {
+            sizes[i] = i < count ? lower : upper;
+        }
+        return sizes;
+    }
+
+    private static void blurHorizontal(byte[] src, byte[] dst, int width, int height, int stride, int radius) {
+        final int size = 2 * radius + 1;
+        for (int y = 0; y < height; y++) {
+            final int row = y * stride;
+            int sum = 0;
+            for (int i = 0; i <= radius && i < width; i++) {
+                sum += src[row + i] & 0xFF;
+            }
+
+            for (int x = 0; x < width; x++) {
+                dst[row + x] = (byte) ((sum + size / 2) / size);
+                if (x + radius + 1 < width) {
+                    sum += src[row + x + radius + 1] & 0xFF;
+                }
+                if (x - radius >= 0) {
+                    sum -= src[row + x - radius] & 0xFF;
+                }
+            }
+        }
+    }
+
+    private static void blurVertical(byte[] src, byte[] dst, int width, int height, int stride, int radius) {
+        final int size = 2 * radius + 1;
+        for (int x = 0; x < width; x++) {
+            int sum = 0;
+            for (int i = 0; i <= radius && i < height; i++) {
+                sum += src[i * stride + x] & 0xFF;
+            }
+
+            for (int y = 0; y < height; y++) {
+                dst[y * stride + x] = (byte) ((sum + size / 2) / size);
+                if (y + radius + 1 < height) {
+                    sum += src[(y + radius + 1) * stride + x] & 0xFF;
+                }
+                if (y - radius >= 0) {
+                    sum -= src[(y - radius) * stride + x] & 0xFF;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package com.cpiz.android.bubbleview.core;
+
+/**
+ * 气泡几何计算
+ * 根据原始形状、箭头朝向与位置策略计算边框与填充形状，并将路径写入 {@link PathBuffer}
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+@SuppressWarnings("WeakerAccess")
+public final class BubbleGeometry {
+    // 箭头朝向，取值与 BubbleStyle.ArrowDirection 一致
+    public static final int DIRECTION_NONE = -1;
+    public static final int DIRECTION_AUTO = 0;
+    public static final int DIRECTION_LEFT = 1;
+    public static final int DIRECTION_UP = 2;
+    public static final int DIRECTION_RIGHT = 3;
+    public static final int DIRECTION_DOWN = 4;
+
+    // 箭头位置策略，取值与 BubbleStyle.ArrowPosPolicy 一致
+    public static final int POLICY_TARGET_CENTER = 0;
+    public static final int POLICY_SELF_CENTER = 1;
+    public static final int POLICY_SELF_BEGIN = 2;
+    public static final int POLICY_SELF_END = 3;
+
+    private final BubbleShape mOriginalShape = new BubbleShape();
+    private final BubbleShape mBorderShape = new BubbleShape();
+    private final BubbleShape mFillShape = new BubbleShape();
+    private int mArrowDirection = DIRECTION_NONE;
+    private int mArrowPosPolicy = POLICY_TARGET_CENTER;
+    private float mArrowToX = 0;
+    private float mArrowToY = 0;
+    private float mFillPadding = 0;
+
+    /**
+     * @return 原始形状，作为计算的输入，可直接修改
+     */
+    public BubbleShape getOriginalShape() {
+        return mOriginalShape;
+    }
+
+    /**
+     * @return 边框形状，由 {@link #updateShapes()} 计算得出
+     */
+    public BubbleShape getBorderShape() {
+        return mBorderShape;
+    }
+
+    /**
+     * @return 填充形状，由 {@link #updateShapes()} 计算得出
+     */
+    public BubbleShape getFillShape() {
+        return mFillShape;
+    }
+
+    public int getArrowDirection() {
+        return mArrowDirection;
+    }
+
+    public void setArrowDirection(int arrowDirection) {
+        mArrowDirection = arrowDirection;
+    }
+
+    public int getArrowPosPolicy() {
+        return mArrowPosPolicy;
+    }
+
+    public void setArrowPosPolicy(int arrowPosPolicy) {
+        mArrowPosPolicy = arrowPosPolicy;
+    }
+
+    public float getArrowToX() {
+        return mArrowToX;
+    }
+
+    public float getArrowToY() {
+        return mArrowToY;
+    }
+
+    /**
+     * 设置箭头指向的目标中心相对气泡中心的坐标
+     *
+     * @param x 目标中心x
+     * @param y 目标中心y
+     */
+    public void setArrowTo(float x, float y) {
+        mArrowToX = x;
+        mArrowToY = y;
+    }
+
+    public float getFillPadding() {
+        return mFillPadding;
+    }
+
+    public void setFillPadding(float fillPadding) {
+        mFillPadding = fillPadding;
+    }
+
+    public void updateShapes() {
+        updateBorderShape();
+        updateFillShape();
+    }
+
+    public void buildBorderPath(PathBuffer out) {
+        buildPath(mArrowDirection, mBorderShape, out);
+    }
+
+    public void buildFillPath(PathBuffer out) {
+        buildPath(mArrowDirection, mFillShape, out);
+    }
+
+    private void updateBorderShape() {
+        final BubbleShape original = mOriginalShape;
+        mBorderShape.set(original);
+        mBorderShape.Rect.set(  // 内缩四周1/2的边线厚度，使得边线能够完全显示
+                original.Rect.left + original.BorderWidth / 2 + (mArrowDirection == DIRECTION_LEFT ? original.ArrowHeight : 0),
+                original.Rect.top + original.BorderWidth / 2 + (mArrowDirection == DIRECTION_UP ? original.ArrowHeight : 0),
+                original.Rect.right - original.BorderWidth / 2 - (mArrowDirection == DIRECTION_RIGHT ? original.ArrowHeight : 0),
+                original.Rect.bottom - original.BorderWidth / 2 - (mArrowDirection == DIRECTION_DOWN ? original.ArrowHeight : 0)
+        );
+
+        // 外层的箭头顶点位置通过箭头位置策略、箭头偏移设定、目标位置决定
+        updateBorderArrowPeak(mArrowDirection, mArrowPosPolicy, mArrowToX, mArrowToY, mBorderShape);
+    }
+
+    private void updateFillShape() {
+        final BubbleShape original = mOriginalShape;
+        mFillShape.set(mBorderShape);
+        mFillShape.BorderWidth = 0;
+        mFillShape.Rect.set(
+                original.Rect.left + original.BorderWidth + mFillPadding + (mArrowDirection == DIRECTION_LEFT ? original.ArrowHeight : 0),
+                original.Rect.top + original.BorderWidth + mFillPadding + (mArrowDirection == DIRECTION_UP ? original.ArrowHeight : 0),
+                original.Rect.right - original.BorderWidth - mFillPadding - (mArrowDirection == DIRECTION_RIGHT ? original.ArrowHeight : 0),
+                original.Rect.bottom - original.BorderWidth - mFillPadding - (mArrowDirection == DIRECTION_DOWN ? original.ArrowHeight : 0)
+        );
+        mFillShape.TopLeftRadius = Math.max(0, original.TopLeftRadius - original.BorderWidth / 2 - mFillPadding);
+        mFillShape.TopRightRadius = Math.max(0, original.TopRightRadius - original.BorderWidth / 2 - mFillPadding);
+        mFillShape.BottomLeftRadius = Math.max(0, original.BottomLeftRadius - original.BorderWidth / 2 - mFillPadding);
+        mFillShape.BottomRightRadius = Math.max(0, original.BottomRightRadius - original.BorderWidth / 2 - mFillPadding);
+
+        double w = original.ArrowWidth - 2 * (original.BorderWidth / 2 + mFillPadding) / Math.sin(Math.atan(original.ArrowHeight / (original.ArrowWidth / 2)));
+        double h = w * original.ArrowHeight / original.ArrowWidth;
+
+        mFillShape.ArrowHeight = (float) (h + original.BorderWidth / 2 + mFillPadding);
+        mFillShape.ArrowWidth = mFillShape.ArrowHeight * original.ArrowWidth / original.ArrowHeight;
+
+        // 内层的箭头顶点位置通过外层边线上的顶点位置来计算
+        updateFillArrowPeak(mArrowDirection, mBorderShape, mFillShape);
+    }
+
+    private static void updateFillArrowPeak(int direction, BubbleShape borderShape, BubbleShape outFillShape) {
+        switch (direction) {
+            case DIRECTION_LEFT:
+                outFillShape.ArrowPeakX = outFillShape.Rect.left - outFillShape.ArrowHeight;
+                outFillShape.ArrowPeakY = borderShape.ArrowPeakY;
+                break;
+            case DIRECTION_RIGHT:
+                outFillShape.ArrowPeakX = outFillShape.Rect.right + outFillShape.ArrowHeight;
+                outFillShape.ArrowPeakY = borderShape.ArrowPeakY;
+                break;
+            case DIRECTION_UP:
+                outFillShape.ArrowPeakX = borderShape.ArrowPeakX;
+                outFillShape.ArrowPeakY = outFillShape.Rect.top - outFillShape.ArrowHeight;
+                break;
+            case DIRECTION_DOWN:
+                outFillShape.ArrowPeakX = borderShape.ArrowPeakX;
+                outFillShape.ArrowPeakY = outFillShape.Rect.bottom + outFillShape.ArrowHeight;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void updateBorderArrowPeak(int direction, int policy, float arrowToX, float arrowToY, BubbleShape outShape) {
+        switch (direction) {
+            case DIRECTION_LEFT:
+                outShape.ArrowPeakX = outShape.Rect.left - outShape.ArrowHeight;
+                outShape.ArrowPeakY = bound(outShape.Rect.top + outShape.TopLeftRadius + outShape.ArrowWidth / 2 + outShape.BorderWidth / 2,
+                        getLeftRightArrowPeakY(policy, arrowToY, outShape), // 确保弧角的显示
+                        outShape.Rect.bottom - outShape.BottomLeftRadius - outShape.ArrowWidth / 2 - outShape.BorderWidth / 2);
+                break;
+            case DIRECTION_UP:
+                outShape.ArrowPeakX = bound(outShape.Rect.left + outShape.TopLeftRadius + outShape.ArrowWidth / 2 + outShape.BorderWidth / 2,
+                        getUpDownArrowPeakX(policy, arrowToX, outShape),
+                        outShape.Rect.right - outShape.TopRightRadius - outShape.ArrowWidth / 2 - outShape.BorderWidth / 2);
+                outShape.ArrowPeakY = outShape.Rect.top - outShape.ArrowHeight;
+                break;
+            case DIRECTION_RIGHT:
+                outShape.ArrowPeakX = outShape.Rect.right + outShape.ArrowHeight;
+                outShape.ArrowPeakY = bound(outShape.Rect.top + outShape.TopRightRadius + outShape.ArrowWidth / 2 + outShape.BorderWidth / 2,
+                        getLeftRightArrowPeakY(policy, arrowToY, outShape),
+                        outShape.Rect.bottom - outShape.BottomRightRadius - outShape.ArrowWidth / 2 - outShape.BorderWidth / 2);
+                break;
+            case DIRECTION_DOWN:
+                outShape.ArrowPeakX = bound(outShape.Rect.left + outShape.BottomLeftRadius + outShape.ArrowWidth / 2 + outShape.BorderWidth / 2,
+                        getUpDownArrowPeakX(policy, arrowToX, outShape),
+                        outShape.Rect.right - outShape.BottomRightRadius - outShape.ArrowWidth / 2 - outShape.BorderWidth / 2);
+                outShape.ArrowPeakY = outShape.Rect.bottom + outShape.ArrowHeight;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static float getLeftRightArrowPeakY(int policy, float arrowToY, BubbleShape shape) {
+        float y;
+        switch (policy) {
+            case POLICY_TARGET_CENTER:
+                y = shape.Rect.centerY() + arrowToY;
+                break;
+            case POLICY_SELF_CENTER:
+                y = shape.Rect.centerY();
+                break;
+            case POLICY_SELF_BEGIN:
+                y = shape.Rect.top;
+                y += shape.ArrowDelta;
+                break;
+            case POLICY_SELF_END:
+                y = shape.Rect.bottom;
+                y -= shape.ArrowDelta;
+                break;
+            default:
+                y = 0;
+        }
+        return y;
+    }
+
+    private static float getUpDownArrowPeakX(int policy, float arrowToX, BubbleShape shape) {
+        float x;
+        switch (policy) {
+            case POLICY_TARGET_CENTER:
+                x = shape.Rect.centerX() + arrowToX;
+                break;
+            case POLICY_SELF_CENTER:
+                x = shape.Rect.centerX();
+                break;
+            case POLICY_SELF_BEGIN:
+                x = shape.Rect.left;
+                x += shape.ArrowDelta;
+                break;
+            case POLICY_SELF_END:
+                x = shape.Rect.right;
+                x -= shape.ArrowDelta;
+                break;
+            default:
+                x = 0;
+        }
+
+        return x;
+    }
+
+    private static void buildPath(int direction, BubbleShape shape, PathBuffer path) {
+        path.reset();
+        switch (direction) {
+            case DIRECTION_UP:
+                buildWithUpArrow(shape, path);
+                break;
+            case DIRECTION_DOWN:
+                buildWithDownArrow(shape, path);
+                break;
+            case DIRECTION_LEFT:
+                buildWithLeftArrow(shape, path);
+                break;
+            case DIRECTION_RIGHT:
+                buildWithRightArrow(shape, path);
+                break;
+            default:
+                buildWithNoneArrow(shape, path);
+                break;
+        }
+    }
+
+    private static void buildWithNoneArrow(BubbleShape shape, PathBuffer path) {
+        BubbleRect rect = shape.Rect;
+        path.moveTo(rect.left, rect.top + shape.TopLeftRadius);
+        buildTopLeftCorner(shape, path);
+        path.lineTo(rect.right - shape.TopRightRadius, rect.top);
+        buildTopRightCorner(shape, path);
+        path.lineTo(rect.right, rect.bottom - shape.BottomRightRadius);
+        buildBottomRightCorner(shape, path);
+        path.lineTo(rect.left + shape.BottomLeftRadius, rect.bottom);
+        buildBottomLeftCorner(shape, path);
+        path.lineTo(rect.left, rect.top + shape.TopLeftRadius);
+    }
+
+    private static void buildWithLeftArrow(BubbleShape shape, PathBuffer path) {
+        BubbleRect rect = shape.Rect;
+        path.moveTo(shape.ArrowPeakX, shape.ArrowPeakY); // 从箭头顶点开始沿顺时针方向绘制
+        path.lineTo(rect.left, shape.ArrowPeakY - shape.ArrowWidth / 2);
+        path.lineTo(rect.left, rect.top + shape.TopLeftRadius); // 左上竖线
+        buildTopLeftCorner(shape, path); // 左上弧角
+        path.lineTo(rect.right - shape.TopRightRadius, rect.top); // 上横线
+        buildTopRightCorner(shape, path); // 右上弧角
+        path.lineTo(rect.right, rect.bottom - shape.BottomRightRadius); // 右侧竖线
+        buildBottomRightCorner(shape, path); // 右下弧角
+        path.lineTo(rect.left + shape.BottomLeftRadius, rect.bottom); // 底部横向
+        buildBottomLeftCorner(shape, path); // 左下弧角
+        path.lineTo(rect.left, shape.ArrowPeakY + shape.ArrowWidth / 2); // 左下竖线
+        path.lineTo(shape.ArrowPeakX, shape.ArrowPeakY); // 回到顶点
+    }
+
+    private static void buildWithUpArrow(BubbleShape shape, PathBuffer path) {
+        BubbleRect rect = shape.Rect;
+        path.moveTo(shape.ArrowPeakX, shape.ArrowPeakY);
+        path.lineTo(shape.ArrowPeakX + shape.ArrowWidth / 2, rect.top);
+        path.lineTo(rect.right - shape.TopRightRadius, rect.top);
+        buildTopRightCorner(shape, path);
+        path.lineTo(rect.right, rect.bottom - shape.BottomRightRadius);
+        buildBottomRightCorner(shape, path);
+        path.lineTo(rect.left + shape.BottomLeftRadius, rect.bottom);
+        buildBottomLeftCorner(shape, path);
+        path.lineTo(rect.left, rect.top + shape.TopLeftRadius);
+        buildTopLeftCorner(shape, path);
+        path.lineTo(shape.ArrowPeakX - shape.ArrowWidth / 2, rect.top);
+        path.lineTo(shape.ArrowPeakX, shape.ArrowPeakY);
+    }
+
+    private static void buildWithRightArrow(BubbleShape shape, PathBuffer path) {
+        BubbleRect rect = shape.Rect;
+        path.moveTo(shape.ArrowPeakX, shape.ArrowPeakY);
+        path.lineTo(rect.right, shape.ArrowPeakY + shape.ArrowWidth / 2);
+        path.lineTo(rect.right, rect.bottom - shape.BottomRightRadius);
+        buildBottomRightCorner(shape, path);
+        path.lineTo(rect.left + shape.BottomLeftRadius, rect.bottom);
+        buildBottomLeftCorner(shape, path);
+        path.lineTo(rect.left, rect.top + shape.TopLeftRadius);
+        buildTopLeftCorner(shape, path);
+        path.lineTo(rect.right - shape.TopRightRadius, rect.top);
+        buildTopRightCorner(shape, path);
+        path.lineTo(rect.right, shape.ArrowPeakY - shape.ArrowWidth / 2);
+        path.lineTo(shape.ArrowPeakX, shape.ArrowPeakY);
+    }
+
+    private static void buildWithDownArrow(BubbleShape shape, PathBuffer path) {
+        BubbleRect rect = shape.Rect;
+        path.moveTo(shape.ArrowPeakX, shape.ArrowPeakY);
+        path.lineTo(shape.ArrowPeakX - shape.ArrowWidth / 2, rect.bottom);
+        path.lineTo(rect.left + shape.BottomLeftRadius, rect.bottom);
+        buildBottomLeftCorner(shape, path);
+        path.lineTo(rect.left, rect.top + shape.TopLeftRadius);
+        buildTopLeftCorner(shape, path);
+        path.lineTo(rect.right - shape.TopRightRadius, rect.top);
+        buildTopRightCorner(shape, path);
+        path.lineTo(rect.right, rect.bottom - shape.BottomRightRadius);
+        buildBottomRightCorner(shape, path);
+        path.lineTo(shape.ArrowPeakX + shape.ArrowWidth / 2, rect.bottom);
+        path.lineTo(shape.ArrowPeakX, shape.ArrowPeakY);
+    }
+
+    private static void buildTopLeftCorner(BubbleShape shape, PathBuffer path) {
+        path.arcTo(shape.Rect.left,
+                shape.Rect.top,
+                shape.Rect.left + 2 * shape.TopLeftRadius,
+                shape.Rect.top + 2 * shape.TopLeftRadius,
+                180,
+                90);
+    }
+
+    private static void buildTopRightCorner(BubbleShape shape, PathBuffer path) {
+        path.arcTo(shape.Rect.right - 2 * shape.TopRightRadius,
+                shape.Rect.top,
+                shape.Rect.right,
+                shape.Rect.top + 2 * shape.TopRightRadius,
+                270,
+                90);
+    }
+
+    private static void buildBottomRightCorner(BubbleShape shape, PathBuffer path) {
+        path.arcTo(shape.Rect.right - 2 * shape.BottomRightRadius,
+                shape.Rect.bottom - 2 * shape.BottomRightRadius,
+                shape.Rect.right,
+                shape.Rect.bottom,
+                0,
+                90);
+    }
+
+    private static void buildBottomLeftCorner(BubbleShape shape, PathBuffer path) {
+        path.arcTo(shape.Rect.left,
+                shape.Rect.bottom - 2 * shape.BottomLeftRadius,
+                shape.Rect.left + 2 * shape.BottomLeftRadius,
+                shape.Rect.bottom,
+                90,
+                90);
+    }
+
+    /**
+     * 范围内取有效值
+     */
+    private static float bound(float min, float val, float max) {
+        return Math.min(Math.max(val, min), max);
+    }
+}
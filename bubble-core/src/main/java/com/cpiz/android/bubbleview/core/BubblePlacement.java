@@ -0,0 +1,386 @@
+package com.cpiz.android.bubbleview.core;
+
+/**
+ * 气泡摆放计算
+ * 包括弹窗相对目标的位置、箭头自动方向，均为纯整数运算，不依赖Android
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+public final class BubblePlacement {
+    // 气泡与目标的相对位置，RelativePos 直接引用这些取值
+    public static final int CENTER_HORIZONTAL = 0;
+    public static final int TO_LEFT_OF = 1;
+    public static final int TO_RIGHT_OF = 2;
+    public static final int ALIGN_LEFT = 3;
+    public static final int ALIGN_RIGHT = 4;
+
+    public static final int CENTER_VERTICAL = 0;
+    public static final int ABOVE = 1;
+    public static final int BELOW = 2;
+    public static final int ALIGN_TOP = 3;
+    public static final int ALIGN_BOTTOM = 4;
+
+    // 水平或垂直相对位置由 getPopupProp 根据可用空间自动选择
+    public static final int AUTO = -1;
+
+    // 与 android.view.Gravity 中的取值保持一致
+    public static final int GRAVITY_CENTER_HORIZONTAL = 0x01;
+    public static final int GRAVITY_LEFT = 0x03;
+    public static final int GRAVITY_RIGHT = 0x05;
+    public static final int GRAVITY_CENTER_VERTICAL = 0x10;
+    public static final int GRAVITY_TOP = 0x30;
+    public static final int GRAVITY_BOTTOM = 0x50;
+
+    /**
+     * 弹窗摆放结果
+     */
+    public static final class PopupProp {
+        public int horizontalRelate, verticalRelate; // 实际采用的相对位置，AUTO 已被替换
+        public int direction;
+        public int arrowPosPolicy;
+        public int maxWidth;
+        public int gravity, x, y;
+
+        private final int[] mCandidates = new int[8]; // AUTO 候选，避免每次计算分配
+    }
+
+    private BubblePlacement() {
+    }
+
+    /**
+     * 根据相对位置取得箭头方向
+     *
+     * @param horizontalRelate 水平相对位置
+     * @param verticalRelate   垂直相对位置
+     * @return {@link BubbleGeometry} 中的 DIRECTION_* 取值
+     */
+    public static int getArrowDirection(int horizontalRelate, int verticalRelate) {
+        final boolean horizontalToTarget = horizontalRelate == TO_LEFT_OF || horizontalRelate == TO_RIGHT_OF;
+        final boolean verticalToTarget = verticalRelate == ABOVE || verticalRelate == BELOW;
+        if (horizontalToTarget && !verticalToTarget) {
+            return horizontalRelate == TO_RIGHT_OF ? BubbleGeometry.DIRECTION_LEFT : BubbleGeometry.DIRECTION_RIGHT;
+        }
+
+        if (!horizontalToTarget && verticalToTarget) {
+            return verticalRelate == BELOW ? BubbleGeometry.DIRECTION_UP : BubbleGeometry.DIRECTION_DOWN;
+        }
+
+        return BubbleGeometry.DIRECTION_NONE;
+    }
+
+    /**
+     * 根据气泡与目标的位置关系取得箭头方向，两者相交时无箭头
+     *
+     * @return {@link BubbleGeometry} 中的 DIRECTION_* 取值
+     */
+    public static int getAutoArrowDirection(int bubbleLeft, int bubbleTop, int bubbleRight, int bubbleBottom,
+                                            int targetLeft, int targetTop, int targetRight, int targetBottom) {
+        final boolean intersects = bubbleLeft < targetRight && targetLeft < bubbleRight
+                && bubbleTop < targetBottom && targetTop < bubbleBottom;
+        if (!intersects) {
+            final int offsetX = ((bubbleLeft + bubbleRight) >> 1) - ((targetLeft + targetRight) >> 1);
+            final int offsetY = ((bubbleTop + bubbleBottom) >> 1) - ((targetTop + targetBottom) >> 1);
+            if (Math.abs(offsetX) < (bubbleRight - bubbleLeft) / 2 + (targetRight - targetLeft) / 2) {
+                if (offsetY < 0) {
+                    return BubbleGeometry.DIRECTION_DOWN;
+                } else if (offsetY > 0) {
+                    return BubbleGeometry.DIRECTION_UP;
+                }
+            } else if (Math.abs(offsetY) < (bubbleBottom - bubbleTop) / 2 + (targetBottom - targetTop) / 2) {
+                if (offsetX < 0) {
+                    return BubbleGeometry.DIRECTION_RIGHT;
+                } else if (offsetX > 0) {
+                    return BubbleGeometry.DIRECTION_LEFT;
+                }
+            }
+        }
+
+        return BubbleGeometry.DIRECTION_NONE;
+    }
+
+    /**
+     * 计算弹窗的显示位置、最大宽度以及箭头方向与位置策略
+     */
+    public static void getPopupProp(final int screenWidth, final int screenHeight, final int navigationBarHeight,
+                                    final int anchorLeft, final int anchorTop, final int anchorRight, final int anchorBottom,
+                                    final int contentWidth, final int contentHeight,
+                                    final int horizontalRelate, final int verticalRelate,
+                                    final int marginH, final int marginV, final int padding,
+                                    PopupProp outProp) {
+        int h = horizontalRelate, v = verticalRelate;
+        if (h == AUTO || v == AUTO) {
+            final int relates = chooseRelativePos(screenWidth, screenHeight,
+                    anchorLeft, anchorTop, anchorRight, anchorBottom, contentWidth, contentHeight,
+                    h, v, marginH, marginV, padding, outProp);
+            h = relates >> 8;
+            v = relates & 0xff;
+        }
+        getPopupPropOfRelate(screenWidth, screenHeight, navigationBarHeight,
+                anchorLeft, anchorTop, anchorRight, anchorBottom, contentWidth, h, v, marginH, marginV, padding, outProp);
+    }
+
+    private static void getPopupPropOfRelate(final int screenWidth, final int screenHeight, final int navigationBarHeight,
+                                             final int anchorLeft, final int anchorTop, final int anchorRight, final int anchorBottom,
+                                             final int contentWidth, final int horizontalRelate, final int verticalRelate,
+                                             final int marginH, final int marginV, final int padding,
+                                             PopupProp outProp) {
+        outProp.horizontalRelate = horizontalRelate;
+        outProp.verticalRelate = verticalRelate;
+        outProp.direction = getArrowDirection(horizontalRelate, verticalRelate);
+        outProp.gravity = 0;
+        getPopupPropOfX(screenWidth, anchorLeft, anchorRight, contentWidth, horizontalRelate, marginH, padding, outProp);
+        getPopupPropOfMaxWidth(screenWidth, anchorLeft, anchorRight, horizontalRelate, marginH, padding, outProp);
+        getPopupPropOfY(screenHeight, navigationBarHeight, anchorTop, anchorBottom, verticalRelate, marginV, outProp);
+
+        switch (outProp.direction) {
+            case BubbleGeometry.DIRECTION_UP:
+            case BubbleGeometry.DIRECTION_DOWN:
+                switch (horizontalRelate) {
+                    case ALIGN_LEFT:
+                        outProp.arrowPosPolicy = BubbleGeometry.POLICY_SELF_BEGIN;
+                        break;
+                    case ALIGN_RIGHT:
+                        outProp.arrowPosPolicy = BubbleGeometry.POLICY_SELF_END;
+                        break;
+                    default:
+                        outProp.arrowPosPolicy = BubbleGeometry.POLICY_TARGET_CENTER;
+                        break;
+                }
+                break;
+            case BubbleGeometry.DIRECTION_LEFT:
+            case BubbleGeometry.DIRECTION_RIGHT:
+                switch (verticalRelate) {
+                    case ALIGN_TOP:
+                        outProp.arrowPosPolicy = BubbleGeometry.POLICY_SELF_BEGIN;
+                        break;
+                    case ALIGN_BOTTOM:
+                        outProp.arrowPosPolicy = BubbleGeometry.POLICY_SELF_END;
+                        break;
+                    default:
+                        outProp.arrowPosPolicy = BubbleGeometry.POLICY_TARGET_CENTER;
+                        break;
+                }
+                break;
+            default:
+                outProp.arrowPosPolicy = BubbleGeometry.POLICY_TARGET_CENTER;
+                break;
+        }
+    }
+
+    /**
+     * 列出 AUTO 相对位置的候选，按同分时的优先顺序
+     * 两个方向均为 AUTO 时为目标的下、上、右、左四侧；仅一个方向为 AUTO 时，在另一方向给定的前提下选择
+     *
+     * @param out 存放候选 [水平, 垂直, ...]，长度至少为8
+     * @return 候选数
+     */
+    public static int getAutoCandidates(int horizontalRelate, int verticalRelate, int[] out) {
+        int count = 0;
+        if (horizontalRelate == AUTO && verticalRelate == AUTO) {
+            count = putCandidate(out, count, CENTER_HORIZONTAL, BELOW);
+            count = putCandidate(out, count, CENTER_HORIZONTAL, ABOVE);
+            count = putCandidate(out, count, TO_RIGHT_OF, CENTER_VERTICAL);
+            count = putCandidate(out, count, TO_LEFT_OF, CENTER_VERTICAL);
+        } else if (horizontalRelate == AUTO) {
+            if (verticalRelate == ABOVE || verticalRelate == BELOW) {
+                count = putCandidate(out, count, CENTER_HORIZONTAL, verticalRelate);
+                count = putCandidate(out, count, ALIGN_LEFT, verticalRelate);
+                count = putCandidate(out, count, ALIGN_RIGHT, verticalRelate);
+            } else {
+                count = putCandidate(out, count, TO_RIGHT_OF, verticalRelate);
+                count = putCandidate(out, count, TO_LEFT_OF, verticalRelate);
+            }
+        } else if (verticalRelate == AUTO) {
+            if (horizontalRelate == TO_LEFT_OF || horizontalRelate == TO_RIGHT_OF) {
+                count = putCandidate(out, count, horizontalRelate, CENTER_VERTICAL);
+                count = putCandidate(out, count, horizontalRelate, ALIGN_TOP);
+                count = putCandidate(out, count, horizontalRelate, ALIGN_BOTTOM);
+            } else {
+                count = putCandidate(out, count, horizontalRelate, BELOW);
+                count = putCandidate(out, count, horizontalRelate, ABOVE);
+            }
+        } else {
+            count = putCandidate(out, count, horizontalRelate, verticalRelate);
+        }
+        return count;
+    }
+
+    private static int putCandidate(int[] out, int count, int horizontalRelate, int verticalRelate) {
+        out[2 * count] = horizontalRelate;
+        out[2 * count + 1] = verticalRelate;
+        return count + 1;
+    }
+
+    /**
+     * 为 AUTO 选择相对位置：对每个候选计算弹窗在屏幕内可见的面积，
+     * 扣除遮挡目标的面积与因宽度不足被挤压的面积，取得分最高者，同分时取靠前的候选
+     * 只使用已测量的内容尺寸，无需试探性地显示
+     * 可见区域为屏幕扣除 padding 的范围，无需另行扣除 NavigationBar：屏幕尺寸取自 DisplayMetrics，
+     * 已是不含 NavigationBar 的可用区域；getPopupProp 的 navigationBarHeight 为实际与可用高度之差，
+     * 仅用于修正 Gravity.BOTTOM 等的显示偏移，再扣除一次会使靠近底部的 BELOW 被误判为放不下
+     *
+     * @param screenHeight 屏幕可用高度，不含 NavigationBar
+     * @param tmpProp      计算用的临时对象
+     * @return 水平相对位置 &lt;&lt; 8 | 垂直相对位置
+     */
+    public static int chooseRelativePos(final int screenWidth, final int screenHeight,
+                                        final int anchorLeft, final int anchorTop, final int anchorRight, final int anchorBottom,
+                                        final int contentWidth, final int contentHeight,
+                                        final int horizontalRelate, final int verticalRelate,
+                                        final int marginH, final int marginV, final int padding,
+                                        PopupProp tmpProp) {
+        final int[] candidates = tmpProp.mCandidates;
+        final int count = getAutoCandidates(horizontalRelate, verticalRelate, candidates);
+        final int anchorCenterX = (anchorLeft + anchorRight) >> 1;
+        final int anchorCenterY = (anchorTop + anchorBottom) >> 1;
+
+        long bestScore = Long.MIN_VALUE;
+        int best = 0;
+        for (int i = 0; i < count; i++) {
+            final int h = candidates[2 * i];
+            final int v = candidates[2 * i + 1];
+            getPopupPropOfMaxWidth(screenWidth, anchorLeft, anchorRight, h, marginH, padding, tmpProp);
+            final int width = Math.max(0, Math.min(contentWidth, tmpProp.maxWidth));
+
+            // 弹窗在屏幕上的位置，与 getPopupPropOfX/Y 的结果一致
+            int left;
+            switch (h) {
+                case ALIGN_LEFT:
+                    left = anchorLeft + marginH;
+                    break;
+                case TO_RIGHT_OF:
+                    left = anchorRight + marginH;
+                    break;
+                case TO_LEFT_OF:
+                    left = anchorLeft - marginH - width;
+                    break;
+                case ALIGN_RIGHT:
+                    left = anchorRight - marginH - width;
+                    break;
+                default:
+                    left = Math.max(padding, Math.min(screenWidth - padding - width, anchorCenterX - width / 2));
+                    break;
+            }
+            int top;
+            switch (v) {
+                case ALIGN_TOP:
+                    top = anchorTop + marginV;
+                    break;
+                case BELOW:
+                    top = anchorBottom + marginV;
+                    break;
+                case ABOVE:
+                    top = anchorTop - marginV - contentHeight;
+                    break;
+                case ALIGN_BOTTOM:
+                    top = anchorBottom - marginV - contentHeight;
+                    break;
+                default:
+                    top = anchorCenterY - contentHeight / 2;
+                    break;
+            }
+            final int right = left + width;
+            final int bottom = top + contentHeight;
+
+            final long visible = area(left, top, right, bottom, padding, padding,
+                    screenWidth - padding, screenHeight - padding);
+            final long covered = area(left, top, right, bottom, anchorLeft, anchorTop, anchorRight, anchorBottom);
+            final long squashed = (long) (contentWidth - width) * contentHeight;
+            final long score = visible - covered - squashed;
+            if (score > bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        return (candidates[2 * best] << 8) | candidates[2 * best + 1];
+    }
+
+    private static long area(int left, int top, int right, int bottom,
+                             int clipLeft, int clipTop, int clipRight, int clipBottom) {
+        final int w = Math.min(right, clipRight) - Math.max(left, clipLeft);
+        final int h = Math.min(bottom, clipBottom) - Math.max(top, clipTop);
+        return w > 0 && h > 0 ? (long) w * h : 0;
+    }
+
+    public static void getPopupPropOfX(int screenWidth, int anchorLeft, int anchorRight, int contentWidth,
+                                       int horizontalRelate, int marginH, final int padding, PopupProp outProp) {
+        switch (horizontalRelate) {
+            case ALIGN_LEFT:
+                outProp.gravity |= GRAVITY_LEFT;
+                outProp.x = anchorLeft + marginH;
+                break;
+            case TO_RIGHT_OF:
+                outProp.gravity |= GRAVITY_LEFT;
+                outProp.x = anchorRight + marginH;
+                break;
+            case TO_LEFT_OF:
+                outProp.gravity |= GRAVITY_RIGHT;
+                outProp.x = screenWidth - anchorLeft + marginH;
+                break;
+            case ALIGN_RIGHT:
+                outProp.gravity |= GRAVITY_RIGHT;
+                outProp.x = screenWidth - anchorRight + marginH;
+                break;
+            case CENTER_HORIZONTAL:
+                final int anchorCenterX = (anchorLeft + anchorRight) >> 1;
+                if (anchorCenterX < contentWidth / 2 + padding) {
+                    outProp.gravity |= GRAVITY_LEFT;
+                    outProp.x = padding;
+                } else if (screenWidth - anchorCenterX < contentWidth / 2 + padding) {
+                    outProp.gravity |= GRAVITY_RIGHT;
+                    outProp.x = padding;
+                } else {
+                    outProp.gravity = GRAVITY_CENTER_HORIZONTAL;
+                    outProp.x = anchorCenterX - screenWidth / 2;
+                }
+                break;
+        }
+    }
+
+    public static void getPopupPropOfMaxWidth(int screenWidth, int anchorLeft, int anchorRight,
+                                              int horizontalRelate, int marginH, final int padding, PopupProp outProp) {
+        switch (horizontalRelate) {
+            case ALIGN_LEFT:
+                outProp.maxWidth = screenWidth - anchorLeft - marginH - padding;
+                break;
+            case TO_RIGHT_OF:
+                outProp.maxWidth = screenWidth - anchorRight - marginH - padding;
+                break;
+            case TO_LEFT_OF:
+                outProp.maxWidth = anchorLeft - marginH - padding;
+                break;
+            case ALIGN_RIGHT:
+                outProp.maxWidth = anchorRight - marginH - padding;
+                break;
+            case CENTER_HORIZONTAL:
+                outProp.maxWidth = screenWidth - 2 * padding;
+                break;
+        }
+    }
+
+    public static void getPopupPropOfY(int screenHeight, int navigationBarHeight, int anchorTop, int anchorBottom,
+                                       int verticalRelate, int marginV, PopupProp outProp) {
+        switch (verticalRelate) {
+            case ALIGN_TOP:
+                outProp.gravity |= GRAVITY_TOP;
+                outProp.y = anchorTop + marginV;
+                break;
+            case BELOW:
+                outProp.gravity |= GRAVITY_TOP;
+                outProp.y = anchorBottom + marginV;
+                break;
+            case ALIGN_BOTTOM:
+                outProp.gravity |= GRAVITY_BOTTOM;
+                outProp.y = screenHeight + navigationBarHeight - anchorBottom + marginV;
+                break;
+            case ABOVE:
+                outProp.gravity |= GRAVITY_BOTTOM;
+                outProp.y = screenHeight + navigationBarHeight - anchorTop + marginV;
+                break;
+            case CENTER_VERTICAL:
+                outProp.gravity |= GRAVITY_CENTER_VERTICAL;
+                outProp.y = ((anchorTop + anchorBottom) >> 1) - navigationBarHeight / 2 - screenHeight / 2;
+                break;
+        }
+    }
+}
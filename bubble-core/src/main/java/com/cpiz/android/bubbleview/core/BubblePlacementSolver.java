@@ -0,0 +1,307 @@
+package com.cpiz.android.bubbleview.core;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * 多个弹窗同时显示时的摆放计算
+ * 每个弹窗给出目标位置、内容尺寸与可选的相对位置，一次算出互不重叠、且不遮挡其它目标的摆放；
+ * 与 {@link BubblePlacement#getPopupProp} 逐个计算不同，弹窗可沿箭头所在的边平移以避让
+ * 选项少的弹窗先摆放，已摆放的弹窗与所有目标登记在 {@link SpatialGrid} 中，
+ * 每次碰撞检测只涉及附近的矩形，总开销为排序的 O(n log n)
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+public final class BubblePlacementSolver {
+    private static final int MIN_CELL_SIZE = 64;
+    // 放不下（超出屏幕或宽度不足）的代价，高于任何重叠面积
+    private static final long COST_NOT_FIT = Long.MAX_VALUE / 4;
+
+    /**
+     * 单个弹窗的摆放请求与结果，坐标与目标位置使用同一坐标系
+     */
+    public static final class Request {
+        public int anchorLeft, anchorTop, anchorRight, anchorBottom;
+        public int contentWidth, contentHeight;
+        public int marginH, marginV;
+
+        private int[] mRelates = new int[8]; // 可选的相对位置，按优先顺序 [水平, 垂直, ...]
+        private int mRelateCount = 0;
+
+        // 摆放结果
+        public int horizontalRelate, verticalRelate;
+        public int left, top, right, bottom;
+        public boolean shifted;    // 是否偏离了 getPopupProp 的默认位置
+        public boolean overlapped; // 无法完全避让时为true，此时为重叠最少的摆放
+
+        /**
+         * 添加一个可选的相对位置，先添加的优先
+         * 含 {@link BubblePlacement#AUTO} 时展开为其全部候选
+         */
+        public Request addRelativePos(int horizontalRelate, int verticalRelate) {
+            if (2 * mRelateCount + 8 > mRelates.length) {
+                mRelates = Arrays.copyOf(mRelates, mRelates.length * 2);
+            }
+            final int[] candidates = new int[8];
+            final int count = BubblePlacement.getAutoCandidates(horizontalRelate, verticalRelate, candidates);
+            System.arraycopy(candidates, 0, mRelates, 2 * mRelateCount, 2 * count);
+            mRelateCount += count;
+            return this;
+        }
+
+        public int getRelativePosCount() {
+            return mRelateCount;
+        }
+
+        public void clearRelativePos() {
+            mRelateCount = 0;
+        }
+    }
+
+    private final int mScreenWidth;
+    private final int mScreenHeight;
+    private final int mPadding;
+
+    private final BubblePlacement.PopupProp mProp = new BubblePlacement.PopupProp();
+    private SpatialGrid mGrid;
+    private int[] mHits = new int[16];
+
+    // 当前候选位置的计算结果
+    private int mWidth, mHeight;
+    private int mMinX, mMaxX, mMinY, mMaxY; // 可平移范围，不可平移时上下限相同
+    private int mNominalX, mNominalY;
+    private boolean mFits;
+    private int mBestX, mBestY;
+    private long mBestCost;
+
+    /**
+     * @param screenWidth  屏幕宽度
+     * @param screenHeight 屏幕高度
+     * @param padding      弹窗与屏幕边缘的最小距离
+     */
+    public BubblePlacementSolver(int screenWidth, int screenHeight, int padding) {
+        mScreenWidth = screenWidth;
+        mScreenHeight = screenHeight;
+        mPadding = padding;
+    }
+
+    /**
+     * 计算所有弹窗的摆放，结果写回各请求
+     * 没有添加相对位置的请求按水平居中、下方处理
+     */
+    public void solve(final Request[] requests) {
+        final int count = requests.length;
+        if (count == 0) {
+            return;
+        }
+
+        long sizeSum = 0;
+        for (Request request : requests) {
+            if (request.mRelateCount == 0) {
+                request.addRelativePos(BubblePlacement.CENTER_HORIZONTAL, BubblePlacement.BELOW);
+            }
+            sizeSum += Math.max(request.contentWidth, request.contentHeight);
+        }
+
+        // 目标先登记，编号与请求下标一致；弹窗随摆放依次登记
+        mGrid = new SpatialGrid((int) Math.max(MIN_CELL_SIZE, sizeSum / count));
+        for (Request request : requests) {
+            mGrid.add(request.anchorLeft, request.anchorTop, request.anchorRight, request.anchorBottom);
+        }
+
+        // 选项少的先摆放，其余按目标位置自上而下、自左而右
+        final Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                final Request ra = requests[a];
+                final Request rb = requests[b];
+                if (ra.mRelateCount != rb.mRelateCount) {
+                    return ra.mRelateCount < rb.mRelateCount ? -1 : 1;
+                }
+                if (ra.anchorTop != rb.anchorTop) {
+                    return ra.anchorTop < rb.anchorTop ? -1 : 1;
+                }
+                return ra.anchorLeft < rb.anchorLeft ? -1 : (ra.anchorLeft == rb.anchorLeft ? 0 : 1);
+            }
+        });
+
+        for (Integer index : order) {
+            place(requests[index], index);
+        }
+        mGrid = null;
+    }
+
+    private void place(Request request, int self) {
+        long bestCost = Long.MAX_VALUE;
+        for (int i = 0; i < request.mRelateCount && bestCost > 0; i++) {
+            final int horizontalRelate = request.mRelates[2 * i];
+            final int verticalRelate = request.mRelates[2 * i + 1];
+            computeCandidate(request, horizontalRelate, verticalRelate);
+
+            final int startX = clamp(mNominalX, mMinX, mMaxX);
+            final int startY = clamp(mNominalY, mMinY, mMaxY);
+            mBestX = startX;
+            mBestY = startY;
+            mBestCost = cost(startX, startY, self);
+            if (mBestCost > 0 && (mMinX < mMaxX || mMinY < mMaxY)) {
+                // 紧贴每个碰撞矩形的边缘平移，取代价最小者
+                final int hitCount = collectHits(startX, startY, self);
+                for (int k = 0; k < hitCount && mBestCost > 0; k++) {
+                    final int hit = mHits[k];
+                    if (mMinX < mMaxX) {
+                        tryAt(mGrid.getRight(hit), startY, self);
+                        tryAt(mGrid.getLeft(hit) - mWidth, startY, self);
+                    }
+                    if (mMinY < mMaxY) {
+                        tryAt(startX, mGrid.getBottom(hit), self);
+                        tryAt(startX, mGrid.getTop(hit) - mHeight, self);
+                    }
+                }
+            }
+
+            final long cost = mFits ? mBestCost : COST_NOT_FIT + mBestCost;
+            if (cost < bestCost) {
+                bestCost = cost;
+                request.horizontalRelate = horizontalRelate;
+                request.verticalRelate = verticalRelate;
+                request.left = mBestX;
+                request.top = mBestY;
+                request.right = mBestX + mWidth;
+                request.bottom = mBestY + mHeight;
+                request.shifted = mBestX != mNominalX || mBestY != mNominalY;
+            }
+        }
+
+        request.overlapped = bestCost > 0;
+        mGrid.add(request.left, request.top, request.right, request.bottom);
+    }
+
+    private void tryAt(int x, int y, int self) {
+        x = clamp(x, mMinX, mMaxX);
+        y = clamp(y, mMinY, mMaxY);
+        final long cost = cost(x, y, self);
+        if (cost < mBestCost) {
+            mBestCost = cost;
+            mBestX = x;
+            mBestY = y;
+        }
+    }
+
+    /**
+     * 计算某个相对位置下弹窗的尺寸、默认位置与可平移范围
+     */
+    private void computeCandidate(Request request, int horizontalRelate, int verticalRelate) {
+        final BubblePlacement.PopupProp prop = mProp;
+        BubblePlacement.getPopupPropOfMaxWidth(mScreenWidth, request.anchorLeft, request.anchorRight,
+                horizontalRelate, request.marginH, mPadding, prop);
+        mFits = request.contentWidth <= prop.maxWidth;
+        mWidth = Math.max(0, Math.min(request.contentWidth, prop.maxWidth));
+        mHeight = request.contentHeight;
+
+        final int anchorCenterX = (request.anchorLeft + request.anchorRight) >> 1;
+        final int anchorCenterY = (request.anchorTop + request.anchorBottom) >> 1;
+
+        switch (horizontalRelate) {
+            case BubblePlacement.ALIGN_LEFT:
+                mNominalX = request.anchorLeft + request.marginH;
+                break;
+            case BubblePlacement.TO_RIGHT_OF:
+                mNominalX = request.anchorRight + request.marginH;
+                break;
+            case BubblePlacement.TO_LEFT_OF:
+                mNominalX = request.anchorLeft - request.marginH - mWidth;
+                break;
+            case BubblePlacement.ALIGN_RIGHT:
+                mNominalX = request.anchorRight - request.marginH - mWidth;
+                break;
+            default:
+                mNominalX = clamp(anchorCenterX - mWidth / 2, mPadding, mScreenWidth - mPadding - mWidth);
+                break;
+        }
+        switch (verticalRelate) {
+            case BubblePlacement.ALIGN_TOP:
+                mNominalY = request.anchorTop + request.marginV;
+                break;
+            case BubblePlacement.BELOW:
+                mNominalY = request.anchorBottom + request.marginV;
+                break;
+            case BubblePlacement.ABOVE:
+                mNominalY = request.anchorTop - request.marginV - mHeight;
+                break;
+            case BubblePlacement.ALIGN_BOTTOM:
+                mNominalY = request.anchorBottom - request.marginV - mHeight;
+                break;
+            default:
+                mNominalY = anchorCenterY - mHeight / 2;
+                break;
+        }
+
+        // 箭头所在的边可平移，但须保持目标中心在弹窗范围内，使箭头仍能指向目标
+        final boolean besideX = horizontalRelate == BubblePlacement.TO_LEFT_OF
+                || horizontalRelate == BubblePlacement.TO_RIGHT_OF;
+        final boolean besideY = verticalRelate == BubblePlacement.ABOVE || verticalRelate == BubblePlacement.BELOW;
+        if (besideX) {
+            mMinX = mMaxX = mNominalX;
+        } else {
+            mMinX = Math.max(mPadding, anchorCenterX - mWidth);
+            mMaxX = Math.min(mScreenWidth - mPadding - mWidth, anchorCenterX);
+        }
+        if (besideY) {
+            mMinY = mMaxY = mNominalY;
+        } else {
+            mMinY = Math.max(mPadding, anchorCenterY - mHeight);
+            mMaxY = Math.min(mScreenHeight - mPadding - mHeight, anchorCenterY);
+        }
+
+        if (mMinX > mMaxX || mMinY > mMaxY
+                || mNominalX < 0 || mNominalX + mWidth > mScreenWidth
+                || (mMinY == mMaxY && (mNominalY < 0 || mNominalY + mHeight > mScreenHeight))) {
+            mFits = false;
+            mMaxX = Math.max(mMinX, mMaxX);
+            mMaxY = Math.max(mMinY, mMaxY);
+        }
+    }
+
+    /**
+     * @return 弹窗在该位置与其它弹窗、其它目标的重叠面积
+     */
+    private long cost(int x, int y, int self) {
+        final int right = x + mWidth;
+        final int bottom = y + mHeight;
+        long area = mGrid.overlapArea(x, y, right, bottom);
+        if (self < mGrid.size()) {
+            // 自身目标不计入，如居中覆盖目标的摆放
+            final int w = Math.min(right, mGrid.getRight(self)) - Math.max(x, mGrid.getLeft(self));
+            final int h = Math.min(bottom, mGrid.getBottom(self)) - Math.max(y, mGrid.getTop(self));
+            if (w > 0 && h > 0) {
+                area -= (long) w * h;
+            }
+        }
+        return area;
+    }
+
+    private int collectHits(int x, int y, int self) {
+        int count = mGrid.query(x, y, x + mWidth, y + mHeight, mHits);
+        if (count > mHits.length) {
+            mHits = new int[count];
+            count = mGrid.query(x, y, x + mWidth, y + mHeight, mHits);
+        }
+
+        // 去掉自身目标
+        for (int i = 0; i < count; i++) {
+            if (mHits[i] == self) {
+                mHits[i] = mHits[--count];
+                break;
+            }
+        }
+        return count;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+}
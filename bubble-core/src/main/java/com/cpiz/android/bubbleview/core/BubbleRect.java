@@ -0,0 +1,40 @@
+package com.cpiz.android.bubbleview.core;
+
+/**
+ * 浮点矩形，对应 android.graphics.RectF 中气泡计算所需的部分
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+public final class BubbleRect {
+    public float left;
+    public float top;
+    public float right;
+    public float bottom;
+
+    public void set(float left, float top, float right, float bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public void set(BubbleRect rect) {
+        set(rect.left, rect.top, rect.right, rect.bottom);
+    }
+
+    public float width() {
+        return right - left;
+    }
+
+    public float height() {
+        return bottom - top;
+    }
+
+    public float centerX() {
+        return (left + right) * 0.5f;
+    }
+
+    public float centerY() {
+        return (top + bottom) * 0.5f;
+    }
+}
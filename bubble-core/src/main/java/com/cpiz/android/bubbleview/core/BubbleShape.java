@@ -0,0 +1,35 @@
+package com.cpiz.android.bubbleview.core;
+
+/**
+ * 气泡形状参数
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+@SuppressWarnings("WeakerAccess")
+public final class BubbleShape {
+    public final BubbleRect Rect = new BubbleRect();
+    public float BorderWidth = 0;
+    public float ArrowHeight = 0;
+    public float ArrowWidth = 0;
+    public float ArrowDelta = 0;
+    public float ArrowPeakX = 0;
+    public float ArrowPeakY = 0;
+    public float TopLeftRadius = 0;
+    public float TopRightRadius = 0;
+    public float BottomLeftRadius = 0;
+    public float BottomRightRadius = 0;
+
+    public void set(BubbleShape shape) {
+        this.Rect.set(shape.Rect);
+        this.BorderWidth = shape.BorderWidth;
+        this.ArrowHeight = shape.ArrowHeight;
+        this.ArrowWidth = shape.ArrowWidth;
+        this.ArrowDelta = shape.ArrowDelta;
+        this.ArrowPeakX = shape.ArrowPeakX;
+        this.ArrowPeakY = shape.ArrowPeakY;
+        this.TopLeftRadius = shape.TopLeftRadius;
+        this.TopRightRadius = shape.TopRightRadius;
+        this.BottomLeftRadius = shape.BottomLeftRadius;
+        this.BottomRightRadius = shape.BottomRightRadius;
+    }
+}
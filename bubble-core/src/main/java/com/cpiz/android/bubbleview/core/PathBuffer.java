@@ -0,0 +1,99 @@
+package com.cpiz.android.bubbleview.core;
+
+/**
+ * 路径指令缓冲区
+ * 以 [指令, 参数...] 的形式将路径写入连续的 float 数组，可复用，构建时不产生额外对象
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+@SuppressWarnings("WeakerAccess")
+public final class PathBuffer {
+    /**
+     * moveTo(x, y)
+     */
+    public static final int CMD_MOVE_TO = 0;
+    /**
+     * lineTo(x, y)
+     */
+    public static final int CMD_LINE_TO = 1;
+    /**
+     * arcTo(left, top, right, bottom, startAngle, sweepAngle)
+     */
+    public static final int CMD_ARC_TO = 2;
+    /**
+     * close()
+     */
+    public static final int CMD_CLOSE = 3;
+
+    // 一个带箭头的气泡约为 1 个 moveTo、8 个 lineTo、4 个 arcTo
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private float[] mData;
+    private int mSize = 0;
+
+    public PathBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PathBuffer(int capacity) {
+        mData = new float[capacity];
+    }
+
+    public void reset() {
+        mSize = 0;
+    }
+
+    public void moveTo(float x, float y) {
+        ensureCapacity(3);
+        mData[mSize++] = CMD_MOVE_TO;
+        mData[mSize++] = x;
+        mData[mSize++] = y;
+    }
+
+    public void lineTo(float x, float y) {
+        ensureCapacity(3);
+        mData[mSize++] = CMD_LINE_TO;
+        mData[mSize++] = x;
+        mData[mSize++] = y;
+    }
+
+    public void arcTo(float left, float top, float right, float bottom, float startAngle, float sweepAngle) {
+        ensureCapacity(7);
+        mData[mSize++] = CMD_ARC_TO;
+        mData[mSize++] = left;
+        mData[mSize++] = top;
+        mData[mSize++] = right;
+        mData[mSize++] = bottom;
+        mData[mSize++] = startAngle;
+        mData[mSize++] = sweepAngle;
+    }
+
+    public void close() {
+        ensureCapacity(1);
+        mData[mSize++] = CMD_CLOSE;
+    }
+
+    /**
+     * @return 已写入的 float 个数
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * 指令数据，有效长度为 {@link #size()}，调用方不应修改
+     *
+     * @return 指令数据
+     */
+    public float[] data() {
+        return mData;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (mSize + extra > mData.length) {
+            float[] data = new float[Math.max(mData.length * 2, mSize + extra)];
+            System.arraycopy(mData, 0, data, 0, mSize);
+            mData = data;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.cpiz.android.bubbleview.core;
+
+import java.util.Arrays;
+
+/**
+ * 整数矩形的均匀网格索引
+ * 矩形按覆盖的格子登记，查询只检查相关格子中的矩形；矩形尺寸与格子相当时，单次查询的开销与总数无关
+ * 矩形按加入顺序编号，编号大者视为在上层
+ * 格子存放在以 long 为键的开放寻址表中，查询过程不分配对象
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+public final class SpatialGrid {
+    private final int mCellSize;
+    // 格子表，线性探测；值为 [数量, 编号...]，为null表示空位
+    private long[] mCellKeys = new long[64];
+    private int[][] mCellValues = new int[64][];
+    private int mCellCount = 0;
+
+    private int[] mRects = new int[4 * 16];
+    private int[] mStamps = new int[16]; // 查询去重，同一矩形可能登记在多个格子中
+    private int mStamp = 0;
+    private int mSize = 0;
+
+    /**
+     * @param cellSize 格子边长，宜与矩形的典型尺寸相当
+     */
+    public SpatialGrid(int cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("cellSize must be positive");
+        }
+        mCellSize = cellSize;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public void clear() {
+        Arrays.fill(mCellValues, null);
+        mCellCount = 0;
+        mSize = 0;
+    }
+
+    public int getLeft(int index) {
+        return mRects[4 * index];
+    }
+
+    public int getTop(int index) {
+        return mRects[4 * index + 1];
+    }
+
+    public int getRight(int index) {
+        return mRects[4 * index + 2];
+    }
+
+    public int getBottom(int index) {
+        return mRects[4 * index + 3];
+    }
+
+    /**
+     * 加入矩形，空矩形不登记到任何格子，但仍占用编号
+     *
+     * @return 矩形编号
+     */
+    public int add(int left, int top, int right, int bottom) {
+        if (mSize == mStamps.length) {
+            mStamps = Arrays.copyOf(mStamps, mSize * 2);
+            mRects = Arrays.copyOf(mRects, mSize * 8);
+        }
+
+        final int index = mSize++;
+        mRects[4 * index] = left;
+        mRects[4 * index + 1] = top;
+        mRects[4 * index + 2] = right;
+        mRects[4 * index + 3] = bottom;
+        mStamps[index] = 0;
+        if (right <= left || bottom <= top) {
+            return index;
+        }
+
+        final int cellRight = cellOf(right - 1);
+        final int cellBottom = cellOf(bottom - 1);
+        for (int cy = cellOf(top); cy <= cellBottom; cy++) {
+            for (int cx = cellOf(left); cx <= cellRight; cx++) {
+                final long key = key(cx, cy);
+                int slot = findSlot(key);
+                int[] cell = mCellValues[slot];
+                if (cell == null) {
+                    if (2 * (mCellCount + 1) > mCellKeys.length) {
+                        growCells();
+                        slot = findSlot(key);
+                    }
+                    cell = new int[4];
+                    mCellKeys[slot] = key;
+                    mCellCount++;
+                } else if (cell[0] + 1 == cell.length) {
+                    cell = Arrays.copyOf(cell, cell.length * 2);
+                }
+                mCellValues[slot] = cell;
+                cell[++cell[0]] = index;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 查找与区域相交的矩形
+     *
+     * @param out 存放相交矩形的编号，可为null
+     * @return 相交的矩形数，out 不足时只存放前面部分
+     */
+    public int query(int left, int top, int right, int bottom, int[] out) {
+        if (right <= left || bottom <= top || mSize == 0) {
+            return 0;
+        }
+
+        final int stamp = nextStamp();
+        int count = 0;
+        final int cellRight = cellOf(right - 1);
+        final int cellBottom = cellOf(bottom - 1);
+        for (int cy = cellOf(top); cy <= cellBottom; cy++) {
+            for (int cx = cellOf(left); cx <= cellRight; cx++) {
+                final int[] cell = getCell(cx, cy);
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 1; i <= cell[0]; i++) {
+                    final int index = cell[i];
+                    if (mStamps[index] == stamp) {
+                        continue;
+                    }
+                    mStamps[index] = stamp;
+                    if (intersects(index, left, top, right, bottom)) {
+                        if (out != null && count < out.length) {
+                            out[count] = index;
+                        }
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return 区域与已有矩形的相交面积之和
+     */
+    public long overlapArea(int left, int top, int right, int bottom) {
+        if (right <= left || bottom <= top || mSize == 0) {
+            return 0;
+        }
+
+        final int stamp = nextStamp();
+        long area = 0;
+        final int cellRight = cellOf(right - 1);
+        final int cellBottom = cellOf(bottom - 1);
+        for (int cy = cellOf(top); cy <= cellBottom; cy++) {
+            for (int cx = cellOf(left); cx <= cellRight; cx++) {
+                final int[] cell = getCell(cx, cy);
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 1; i <= cell[0]; i++) {
+                    final int index = cell[i];
+                    if (mStamps[index] == stamp) {
+                        continue;
+                    }
+                    mStamps[index] = stamp;
+                    final int w = Math.min(right, getRight(index)) - Math.max(left, getLeft(index));
+                    final int h = Math.min(bottom, getBottom(index)) - Math.max(top, getTop(index));
+                    if (w > 0 && h > 0) {
+                        area += (long) w * h;
+                    }
+                }
+            }
+        }
+        return area;
+    }
+
+    /**
+     * 查找包含某点的最上层矩形
+     *
+     * @return 矩形编号，没有时为-1
+     */
+    public int findAt(int x, int y) {
+        final int[] cell = getCell(cellOf(x), cellOf(y));
+        if (cell == null) {
+            return -1;
+        }
+
+        int found = -1;
+        for (int i = 1; i <= cell[0]; i++) {
+            final int index = cell[i];
+            if (index > found && x >= getLeft(index) && x < getRight(index)
+                    && y >= getTop(index) && y < getBottom(index)) {
+                found = index;
+            }
+        }
+        return found;
+    }
+
+    private boolean intersects(int index, int left, int top, int right, int bottom) {
+        return left < getRight(index) && getLeft(index) < right && top < getBottom(index) && getTop(index) < bottom;
+    }
+
+    private int nextStamp() {
+        if (++mStamp == Integer.MAX_VALUE) {
+            mStamp = 1;
+            Arrays.fill(mStamps, 0);
+        }
+        return mStamp;
+    }
+
+    private int cellOf(int value) {
+        // 向下取整，负坐标同样适用（Math.floorDiv 需 Java 8）
+        return value >= 0 ? value / mCellSize : -((-value - 1) / mCellSize) - 1;
+    }
+
+    private int[] getCell(int cx, int cy) {
+        return mCellValues[findSlot(key(cx, cy))];
+    }
+
+    /**
+     * @return 键所在的位置，不存在时为应插入的空位
+     */
+    private int findSlot(long key) {
+        final int mask = mCellKeys.length - 1;
+        long h = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (h ^ (h >>> 32)) & mask;
+        while (mCellValues[slot] != null && mCellKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void growCells() {
+        final long[] oldKeys = mCellKeys;
+        final int[][] oldValues = mCellValues;
+        mCellKeys = new long[oldKeys.length * 2];
+        mCellValues = new int[oldValues.length * 2][];
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                final int slot = findSlot(oldKeys[i]);
+                mCellKeys[slot] = oldKeys[i];
+                mCellValues[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+}
@@ -0,0 +1,31 @@
+package com.cpiz.android.bubbleview.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BoxBlurTest {
+    @Test
+    public void testBoxSizesShouldBeOdd() {
+        for (int size : BoxBlur.boxSizes(5f, 3)) {
+            Assert.assertEquals(1, size % 2);
+        }
+    }
+
+    @Test
+    public void testBlurShouldSpreadAndKeepUniformArea() {
+        final int width = 32, height = 32;
+        byte[] pixels = new byte[width * height];
+        for (int y = 8; y < 24; y++) {
+            for (int x = 8; x < 24; x++) {
+                pixels[y * width + x] = (byte) 0xFF;
+            }
+        }
+
+        BoxBlur.blur(pixels, width, height, width, 2f);
+
+        Assert.assertEquals(0xFF, pixels[16 * width + 16] & 0xFF); // 中心仍为不透明
+        Assert.assertTrue((pixels[16 * width + 6] & 0xFF) > 0); // 边缘向外扩散
+        Assert.assertTrue((pixels[16 * width + 8] & 0xFF) < 0xFF);
+        Assert.assertEquals(0, pixels[0] & 0xFF); // 远处仍透明
+    }
+}
@@ -0,0 +1,57 @@
+package com.cpiz.android.bubbleview.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BubbleGeometryTest {
+    private static BubbleGeometry create(int direction) {
+        BubbleGeometry geometry = new BubbleGeometry();
+        BubbleShape shape = geometry.getOriginalShape();
+        shape.Rect.set(0, 0, 200, 100);
+        shape.ArrowHeight = 10;
+        shape.ArrowWidth = 20;
+        shape.TopLeftRadius = shape.TopRightRadius = shape.BottomLeftRadius = shape.BottomRightRadius = 8;
+        geometry.setArrowDirection(direction);
+        return geometry;
+    }
+
+    @Test
+    public void testArrowPeakShouldBeClampedAwayFromCorners() {
+        BubbleGeometry geometry = create(BubbleGeometry.DIRECTION_UP);
+        geometry.setArrowTo(-1000, 0);
+        geometry.updateShapes();
+        Assert.assertEquals(18, geometry.getBorderShape().ArrowPeakX, 0.001);
+        Assert.assertEquals(0, geometry.getBorderShape().ArrowPeakY, 0.001);
+
+        geometry.setArrowTo(1000, 0);
+        geometry.updateShapes();
+        Assert.assertEquals(182, geometry.getBorderShape().ArrowPeakX, 0.001);
+    }
+
+    @Test
+    public void testArrowPeakShouldFollowPolicy() {
+        BubbleGeometry geometry = create(BubbleGeometry.DIRECTION_LEFT);
+        geometry.setArrowPosPolicy(BubbleGeometry.POLICY_SELF_BEGIN);
+        geometry.getOriginalShape().ArrowDelta = 40;
+        geometry.updateShapes();
+        Assert.assertEquals(0, geometry.getBorderShape().ArrowPeakX, 0.001);
+        Assert.assertEquals(40, geometry.getBorderShape().ArrowPeakY, 0.001);
+    }
+
+    @Test
+    public void testBuildPathShouldEmitCommands() {
+        PathBuffer buffer = new PathBuffer();
+        BubbleGeometry geometry = create(BubbleGeometry.DIRECTION_NONE);
+        geometry.updateShapes();
+        geometry.buildBorderPath(buffer);
+        Assert.assertEquals(PathBuffer.CMD_MOVE_TO, (int) buffer.data()[0]);
+        // 1 moveTo + 4 arcTo + 4 lineTo
+        Assert.assertEquals(3 + 4 * 7 + 4 * 3, buffer.size());
+
+        geometry.setArrowDirection(BubbleGeometry.DIRECTION_DOWN);
+        geometry.updateShapes();
+        geometry.buildBorderPath(buffer);
+        // 1 moveTo + 4 arcTo + 7 lineTo
+        Assert.assertEquals(3 + 4 * 7 + 7 * 3, buffer.size());
+    }
+}
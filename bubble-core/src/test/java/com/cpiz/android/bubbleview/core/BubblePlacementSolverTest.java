@@ -0,0 +1,77 @@
+package com.cpiz.android.bubbleview.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BubblePlacementSolverTest {
+    private static BubblePlacementSolver.Request request(int left, int top, int right, int bottom, int w, int h) {
+        BubblePlacementSolver.Request request = new BubblePlacementSolver.Request();
+        request.anchorLeft = left;
+        request.anchorTop = top;
+        request.anchorRight = right;
+        request.anchorBottom = bottom;
+        request.contentWidth = w;
+        request.contentHeight = h;
+        return request;
+    }
+
+    private static boolean intersects(BubblePlacementSolver.Request a, BubblePlacementSolver.Request b) {
+        return a.left < b.right && b.left < a.right && a.top < b.bottom && b.top < a.bottom;
+    }
+
+    @Test
+    public void testAdjacentAnchorsShiftApart() {
+        // 两个相邻目标都希望在下方居中显示，第二个沿水平方向避让
+        BubblePlacementSolver.Request a = request(400, 100, 440, 140, 200, 80)
+                .addRelativePos(BubblePlacement.CENTER_HORIZONTAL, BubblePlacement.BELOW);
+        BubblePlacementSolver.Request b = request(560, 100, 600, 140, 200, 80)
+                .addRelativePos(BubblePlacement.CENTER_HORIZONTAL, BubblePlacement.BELOW);
+        new BubblePlacementSolver(1080, 1920, 6).solve(new BubblePlacementSolver.Request[]{a, b});
+
+        Assert.assertFalse(a.overlapped);
+        Assert.assertFalse(b.overlapped);
+        Assert.assertFalse(intersects(a, b));
+        Assert.assertEquals(140, a.top);
+        Assert.assertEquals(140, b.top);
+        Assert.assertFalse(a.shifted);
+        Assert.assertTrue(b.shifted);
+        // 箭头仍能指向目标中心
+        Assert.assertEquals(520, b.left);
+        Assert.assertTrue(b.left <= 580 && b.right >= 580);
+    }
+
+    @Test
+    public void testFallbackToNextRelativePos() {
+        // 目标贴近屏幕底部，下方放不下，改用上方
+        BubblePlacementSolver.Request a = request(500, 1880, 540, 1910, 200, 80)
+                .addRelativePos(BubblePlacement.CENTER_HORIZONTAL, BubblePlacement.BELOW)
+                .addRelativePos(BubblePlacement.CENTER_HORIZONTAL, BubblePlacement.ABOVE);
+        new BubblePlacementSolver(1080, 1920, 6).solve(new BubblePlacementSolver.Request[]{a});
+
+        Assert.assertEquals(BubblePlacement.ABOVE, a.verticalRelate);
+        Assert.assertEquals(1800, a.top);
+        Assert.assertFalse(a.overlapped);
+    }
+
+    @Test
+    public void testManyPopupsDoNotOverlap() {
+        BubblePlacementSolver.Request[] requests = new BubblePlacementSolver.Request[24];
+        for (int i = 0; i < requests.length; i++) {
+            int x = 60 + (i % 6) * 160;
+            int y = 100 + (i / 6) * 400;
+            requests[i] = request(x, y, x + 40, y + 40, 140, 60)
+                    .addRelativePos(BubblePlacement.CENTER_HORIZONTAL, BubblePlacement.BELOW)
+                    .addRelativePos(BubblePlacement.CENTER_HORIZONTAL, BubblePlacement.ABOVE)
+                    .addRelativePos(BubblePlacement.TO_RIGHT_OF, BubblePlacement.CENTER_VERTICAL);
+        }
+        new BubblePlacementSolver(1080, 1920, 6).solve(requests);
+
+        for (int i = 0; i < requests.length; i++) {
+            Assert.assertFalse(requests[i].overlapped);
+            Assert.assertTrue(requests[i].left >= 0 && requests[i].right <= 1080);
+            for (int j = i + 1; j < requests.length; j++) {
+                Assert.assertFalse(intersects(requests[i], requests[j]));
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.cpiz.android.bubbleview.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BubblePlacementTest {
+    @Test
+    public void testAutoArrowDirection() {
+        // 目标在气泡上方，箭头朝上
+        Assert.assertEquals(BubbleGeometry.DIRECTION_UP,
+                BubblePlacement.getAutoArrowDirection(100, 200, 300, 300, 150, 100, 200, 150));
+        // 目标在气泡右侧，箭头朝右
+        Assert.assertEquals(BubbleGeometry.DIRECTION_RIGHT,
+                BubblePlacement.getAutoArrowDirection(100, 200, 300, 300, 400, 220, 450, 260));
+        // 相交时无箭头
+        Assert.assertEquals(BubbleGeometry.DIRECTION_NONE,
+                BubblePlacement.getAutoArrowDirection(100, 200, 300, 300, 250, 250, 350, 350));
+    }
+
+    @Test
+    public void testPopupPropBelowCenter() {
+        BubblePlacement.PopupProp prop = new BubblePlacement.PopupProp();
+        BubblePlacement.getPopupProp(1080, 1920, 0, 500, 400, 580, 440, 200, 100,
+                BubblePlacement.CENTER_HORIZONTAL, BubblePlacement.BELOW, 0, 10, 6, prop);
+        Assert.assertEquals(BubbleGeometry.DIRECTION_UP, prop.direction);
+        Assert.assertEquals(BubbleGeometry.POLICY_TARGET_CENTER, prop.arrowPosPolicy);
+        Assert.assertEquals(BubblePlacement.GRAVITY_CENTER_HORIZONTAL | BubblePlacement.GRAVITY_TOP, prop.gravity);
+        Assert.assertEquals(540 - 540, prop.x);
+        Assert.assertEquals(450, prop.y);
+        Assert.assertEquals(1068, prop.maxWidth);
+    }
+
+    @Test
+    public void testPopupPropAlignRightAbove() {
+        BubblePlacement.PopupProp prop = new BubblePlacement.PopupProp();
+        BubblePlacement.getPopupProp(1080, 1920, 0, 900, 1000, 1000, 1040, 300, 100,
+                BubblePlacement.ALIGN_RIGHT, BubblePlacement.ABOVE, 0, 0, 6, prop);
+        Assert.assertEquals(BubbleGeometry.DIRECTION_DOWN, prop.direction);
+        Assert.assertEquals(BubbleGeometry.POLICY_SELF_END, prop.arrowPosPolicy);
+        Assert.assertEquals(BubblePlacement.GRAVITY_RIGHT | BubblePlacement.GRAVITY_BOTTOM, prop.gravity);
+        Assert.assertEquals(80, prop.x);
+        Assert.assertEquals(920, prop.y);
+    }
+
+    @Test
+    public void testPopupPropAuto() {
+        BubblePlacement.PopupProp prop = new BubblePlacement.PopupProp();
+        // 目标靠近屏幕底部，下方放不下，选择上方
+        BubblePlacement.getPopupProp(1080, 1920, 0, 500, 1850, 580, 1890, 200, 100,
+                BubblePlacement.AUTO, BubblePlacement.AUTO, 0, 10, 6, prop);
+        Assert.assertEquals(BubblePlacement.CENTER_HORIZONTAL, prop.horizontalRelate);
+        Assert.assertEquals(BubblePlacement.ABOVE, prop.verticalRelate);
+        Assert.assertEquals(BubbleGeometry.DIRECTION_DOWN, prop.direction);
+
+        // 空间充足时取第一个候选：下方
+        BubblePlacement.getPopupProp(1080, 1920, 0, 500, 400, 580, 440, 200, 100,
+                BubblePlacement.AUTO, BubblePlacement.AUTO, 0, 10, 6, prop);
+        Assert.assertEquals(BubblePlacement.BELOW, prop.verticalRelate);
+
+        // 目标靠近左边缘且只允许左右两侧，选择右侧
+        BubblePlacement.getPopupProp(1080, 1920, 0, 10, 900, 60, 940, 300, 100,
+                BubblePlacement.AUTO, BubblePlacement.CENTER_VERTICAL, 10, 0, 6, prop);
+        Assert.assertEquals(BubblePlacement.TO_RIGHT_OF, prop.horizontalRelate);
+        Assert.assertEquals(BubbleGeometry.DIRECTION_LEFT, prop.direction);
+    }
+}
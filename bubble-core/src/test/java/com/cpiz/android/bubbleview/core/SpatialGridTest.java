@@ -0,0 +1,33 @@
+package com.cpiz.android.bubbleview.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SpatialGridTest {
+    @Test
+    public void testQueryAcrossCells() {
+        SpatialGrid grid = new SpatialGrid(50);
+        grid.add(0, 0, 120, 40);     // 跨三个格子
+        grid.add(200, 200, 240, 240);
+        grid.add(-80, -80, -10, -10); // 负坐标
+
+        int[] out = new int[4];
+        Assert.assertEquals(1, grid.query(100, 20, 160, 60, out));
+        Assert.assertEquals(0, out[0]);
+        Assert.assertEquals(2, grid.query(-20, -20, 10, 10, out));
+        Assert.assertEquals(1, grid.query(0, 0, 150, 10, out)); // 跨格子的矩形只计一次
+        Assert.assertEquals(0, grid.query(120, 0, 200, 200, out)); // 边缘相接不算相交
+        Assert.assertEquals(3, grid.query(-100, -100, 300, 300, null));
+        Assert.assertEquals(10 * 10 + 10 * 10, grid.overlapArea(-20, -20, 10, 10));
+    }
+
+    @Test
+    public void testFindAtTopmost() {
+        SpatialGrid grid = new SpatialGrid(64);
+        grid.add(0, 0, 100, 100);
+        grid.add(50, 50, 150, 150);
+        Assert.assertEquals(1, grid.findAt(60, 60));
+        Assert.assertEquals(0, grid.findAt(10, 10));
+        Assert.assertEquals(-1, grid.findAt(200, 10));
+    }
+}
@@ -0,0 +1,348 @@
+package com.cpiz.android.bubbleview;
+
+import android.graphics.Rect;
+import android.os.Build;
+import android.util.SparseArray;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.view.ViewTreeObserver;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.WeakHashMap;
+
+/**
+ * 箭头目标位置跟踪器，每个窗口一个，保存在窗口根View的Tag中
+ * 在每帧绘制前统一查询已登记View的屏幕位置（同一帧内每个View最多查询一次），
+ * 与上一帧比较后，只通知目标相对位置真正发生变化的气泡
+ * 气泡与目标不在同一窗口时（如弹窗），需同时登记到两个窗口的跟踪器，任一窗口刷新都会检查
+ * 同时维护窗口内 ID 到 View 的索引，用于按ID查找箭头目标，布局变化后失效并在下次查找时重建
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+final class BubbleAnchorTracker implements ViewTreeObserver.OnPreDrawListener,
+        ViewTreeObserver.OnGlobalLayoutListener {
+    /**
+     * 跟踪目标的气泡
+     */
+    interface Client {
+        /**
+         * @return 气泡自身
+         */
+        View getTrackedView();
+
+        /**
+         * 在绘制前调用，尚未找到目标时可在此通过 {@link #findViewById(View, int, BubbleMetrics)} 解析
+         *
+         * @return 箭头指向的目标，为null时不跟踪
+         */
+        View getAnchorView();
+
+        /**
+         * 目标相对气泡的位置发生变化
+         *
+         * @param selfRect   气泡的屏幕区域
+         * @param anchorRect 目标的屏幕区域
+         */
+        void onAnchorMoved(Rect selfRect, Rect anchorRect);
+
+        BubbleMetrics getMetrics();
+    }
+
+    private static final class Location {
+        int frame = -1;
+        int x, y;
+    }
+
+    private static final class Entry {
+        final Client client;
+        boolean hasOffset = false;
+        int offsetX, offsetY;
+
+        Entry(Client client) {
+            this.client = client;
+        }
+    }
+
+    private final View mRootView;
+    private final ArrayList<Entry> mEntries = new ArrayList<>();
+    private final WeakHashMap<View, Location> mLocations = new WeakHashMap<>();
+    private Entry[] mDispatching = new Entry[0];
+    private ViewTreeObserver mObserver = null;
+    private int mFrame = 0;
+    private boolean mInPreDraw = false; // 仅在绘制前的分发中复用本帧的查询结果
+
+    // ID 索引，同一ID的View按前序遍历顺序排列，与 findViewById 的查找顺序一致
+    private final SparseArray<ArrayList<View>> mIdIndex = new SparseArray<>();
+    private boolean mIdIndexValid = false;
+    private final IdentityHashMap<View, Integer> mAncestorLevels = new IdentityHashMap<>();
+    private final ArrayList<View> mAncestors = new ArrayList<>(); // 按层级排列的气泡祖先
+
+    // 方便计算用的中间值对象，避免重复创建
+    private final int[] mLocation = new int[2];
+    private final Rect mSelfRect = new Rect();
+    private final Rect mAnchorRect = new Rect();
+
+    private BubbleAnchorTracker(View rootView) {
+        mRootView = rootView;
+    }
+
+    /**
+     * 取得View所在窗口的跟踪器
+     *
+     * @param view 已添加到窗口的View
+     * @return 跟踪器，View未添加到窗口时为null
+     */
+    static BubbleAnchorTracker of(View view) {
+        if (view == null || view.getWindowToken() == null) {
+            return null;
+        }
+
+        final View rootView = view.getRootView();
+        BubbleAnchorTracker tracker = (BubbleAnchorTracker) rootView.getTag(R.id.bubble_anchor_tracker);
+        if (tracker == null) {
+            tracker = new BubbleAnchorTracker(rootView);
+            rootView.setTag(R.id.bubble_anchor_tracker, tracker);
+        }
+        return tracker;
+    }
+
+    void register(Client client) {
+        for (Entry entry : mEntries) {
+            if (entry.client == client) {
+                return;
+            }
+        }
+
+        mEntries.add(new Entry(client));
+        if (mObserver == null) {
+            mObserver = mRootView.getViewTreeObserver();
+            mObserver.addOnPreDrawListener(this);
+            mObserver.addOnGlobalLayoutListener(this);
+        }
+    }
+
+    void unregister(Client client) {
+        for (int i = mEntries.size() - 1; i >= 0; i--) {
+            if (mEntries.get(i).client == client) {
+                mEntries.remove(i);
+            }
+        }
+
+        if (mEntries.isEmpty() && mObserver != null) {
+            if (mObserver.isAlive()) {
+                mObserver.removeOnPreDrawListener(this);
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                    mObserver.removeOnGlobalLayoutListener(this);
+                } else {
+                    // noinspection deprecation
+                    mObserver.removeGlobalOnLayoutListener(this);
+                }
+            }
+            mObserver = null;
+            mLocations.clear();
+            invalidateIdIndex();
+        }
+    }
+
+    /**
+     * 取得View的屏幕位置，绘制前的分发中本窗口内的View只查询一次
+     * 测量、布局等其他时机位置可能已变化，直接查询
+     *
+     * @param view        View
+     * @param outLocation 输出位置
+     * @param metrics     查询计入的性能统计
+     */
+    void getLocationOnScreen(View view, int[] outLocation, BubbleMetrics metrics) {
+        if (!mInPreDraw || view.getRootView() != mRootView) {
+            // 绘制前的分发以外，或其他窗口中的View（如弹窗指向的目标），不使用帧内缓存
+            final boolean traced = BubbleTrace.begin(BubbleTrace.LOCATION_LOOKUP);
+            final long startNanos = BubbleMetrics.start();
+            view.getLocationOnScreen(outLocation);
+            metrics.end(BubbleMetrics.LOCATION_LOOKUP, startNanos);
+            BubbleTrace.end(traced);
+            return;
+        }
+
+        Location location = mLocations.get(view);
+        if (location == null) {
+            location = new Location();
+            mLocations.put(view, location);
+        }
+
+        if (location.frame != mFrame) {
+            final boolean traced = BubbleTrace.begin(BubbleTrace.LOCATION_LOOKUP);
+            final long startNanos = BubbleMetrics.start();
+            view.getLocationOnScreen(mLocation);
+            metrics.end(BubbleMetrics.LOCATION_LOOKUP, startNanos);
+            BubbleTrace.end(traced);
+            location.x = mLocation[0];
+            location.y = mLocation[1];
+            location.frame = mFrame;
+        }
+
+        outLocation[0] = location.x;
+        outLocation[1] = location.y;
+    }
+
+    /**
+     * 按ID查找离气泡最近的目标
+     * 与从气泡的父View开始逐层向上调用 findViewById 的结果一致：包含该ID的最近一层祖先胜出，
+     * 同一祖先下按前序遍历顺序取第一个
+     *
+     * @param bubble  气泡
+     * @param viewId  目标ID
+     * @param metrics 查找计入的性能统计
+     * @return 目标View，找不到时为null
+     */
+    View findViewById(View bubble, int viewId, BubbleMetrics metrics) {
+        if (viewId == View.NO_ID || viewId == 0) {
+            return null;
+        }
+
+        final boolean traced = BubbleTrace.begin(BubbleTrace.FIND_VIEW);
+        final long startNanos = BubbleMetrics.start();
+        if (!mIdIndexValid) {
+            buildIdIndex(mRootView);
+            mIdIndexValid = true;
+        }
+
+        View found = null;
+        int foundLevel = Integer.MAX_VALUE;
+        final ArrayList<View> candidates = mIdIndex.get(viewId);
+        if (candidates != null) {
+            int level = 0;
+            for (ViewParent vp = bubble.getParent(); vp instanceof View; vp = vp.getParent()) {
+                mAncestorLevels.put((View) vp, level++);
+                mAncestors.add((View) vp);
+            }
+
+            // 候选者与气泡的最近公共祖先越近越优先，相同时保留前序遍历中靠前的
+            for (int i = 0, size = candidates.size(); i < size; i++) {
+                final View candidate = candidates.get(i);
+                View v = candidate;
+                while (v != null) {
+                    final Integer ancestorLevel = mAncestorLevels.get(v);
+                    if (ancestorLevel != null) {
+                        if (ancestorLevel < foundLevel) {
+                            foundLevel = ancestorLevel;
+                            found = candidate;
+                        }
+                        break;
+                    }
+                    final ViewParent parent = v.getParent();
+                    v = parent instanceof View ? (View) parent : null;
+                }
+            }
+            mAncestorLevels.clear();
+        }
+
+        // 索引可能缺少未经布局遍历添加的View，如 RecyclerView 滚动时新建的列表项：
+        // 命中时检查更近一层祖先中是否已有该ID，未命中时按原方式逐层查找；发现索引过期即按原方式查找并使索引失效
+        final boolean stale;
+        if (found != null) {
+            stale = foundLevel > 0 && mAncestors.get(foundLevel - 1).findViewById(viewId) != null;
+        } else {
+            found = findViewByIdScoped(bubble, viewId);
+            stale = found != null;
+        }
+        mAncestors.clear();
+        if (stale) {
+            invalidateIdIndex();
+            found = findViewByIdScoped(bubble, viewId);
+        }
+
+        metrics.end(BubbleMetrics.FIND_VIEW, startNanos);
+        BubbleTrace.end(traced);
+        return found;
+    }
+
+    /**
+     * 从气泡的父View开始逐层向上调用 findViewById，索引不可用时的查找方式
+     */
+    private static View findViewByIdScoped(View bubble, int viewId) {
+        for (ViewParent vp = bubble.getParent(); vp instanceof View; vp = vp.getParent()) {
+            final View found = ((View) vp).findViewById(viewId);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private void buildIdIndex(View view) {
+        final int id = view.getId();
+        if (id != View.NO_ID) {
+            ArrayList<View> views = mIdIndex.get(id);
+            if (views == null) {
+                views = new ArrayList<>(1);
+                mIdIndex.put(id, views);
+            }
+            views.add(view);
+        }
+
+        if (view instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) view;
+            for (int i = 0, count = group.getChildCount(); i < count; i++) {
+                buildIdIndex(group.getChildAt(i));
+            }
+        }
+    }
+
+    private void invalidateIdIndex() {
+        if (mIdIndexValid) {
+            mIdIndexValid = false;
+            mIdIndex.clear(); // 不再持有已移除的View
+        }
+    }
+
+    @Override
+    public void onGlobalLayout() {
+        // 增删View通常会引起重新布局，以此作为层级变化的通知；
+        // 不经过布局遍历的增删（如 RecyclerView 滚动时添加列表项）由 findViewById 中的检查兜底
+        invalidateIdIndex();
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        mFrame++;
+        mInPreDraw = true;
+
+        // 回调中可能登记或注销，先复制一份
+        final int count = mEntries.size();
+        if (mDispatching.length < count) {
+            mDispatching = new Entry[count];
+        }
+        mEntries.toArray(mDispatching);
+
+        for (int i = 0; i < count; i++) {
+            final Entry entry = mDispatching[i];
+            mDispatching[i] = null;
+
+            final Client client = entry.client;
+            final View self = client.getTrackedView();
+            final View anchor = client.getAnchorView();
+            if (self == null || anchor == null || anchor.getWindowToken() == null) {
+                continue;
+            }
+
+            getLocationOnScreen(self, mLocation, client.getMetrics());
+            mSelfRect.set(mLocation[0], mLocation[1], mLocation[0] + self.getWidth(), mLocation[1] + self.getHeight());
+            getLocationOnScreen(anchor, mLocation, client.getMetrics());
+            mAnchorRect.set(mLocation[0], mLocation[1], mLocation[0] + anchor.getWidth(),
+                    mLocation[1] + anchor.getHeight());
+
+            final int offsetX = mAnchorRect.centerX() - mSelfRect.centerX();
+            final int offsetY = mAnchorRect.centerY() - mSelfRect.centerY();
+            if (!entry.hasOffset || entry.offsetX != offsetX || entry.offsetY != offsetY) {
+                entry.hasOffset = true;
+                entry.offsetX = offsetX;
+                entry.offsetY = offsetY;
+                client.onAnchorMoved(mSelfRect, mAnchorRect);
+            }
+        }
+        mInPreDraw = false;
+        return true;
+    }
+}
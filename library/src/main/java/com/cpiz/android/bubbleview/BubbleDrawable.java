@@ -1,20 +1,27 @@
 package com.cpiz.android.bubbleview;
 
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.ColorFilter;
+import android.graphics.Outline;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.PixelFormat;
-import android.graphics.PointF;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.support.annotation.NonNull;
 
-import static com.cpiz.android.bubbleview.Utils.bound;
+import com.cpiz.android.bubbleview.core.BubbleGeometry;
+import com.cpiz.android.bubbleview.core.BubbleShape;
+import com.cpiz.android.bubbleview.core.PathBuffer;
 
 /**
  * 气泡框背景
+ * 形状计算由 {@link BubbleGeometry} 完成，这里只负责将其输出的路径指令回放到 Path 并绘制
  * <p>
  * Created by caijw on 2016/5/26.
  * https://github.com/cpiz/BubbleView
@@ -22,185 +29,329 @@ import static com.cpiz.android.bubbleview.Utils.bound;
 class BubbleDrawable extends Drawable {
     private BubbleStyle.ArrowDirection mArrowDirection = BubbleStyle.ArrowDirection.None;
     private BubbleStyle.ArrowPosPolicy mArrowPosPolicy = BubbleStyle.ArrowPosPolicy.TargetCenter;
-    private Shape mOriginalShape = new Shape();
-    private Shape mBorderShape = new Shape();
-    private Shape mFillShape = new Shape();
+    private final BubbleGeometry mGeometry = new BubbleGeometry();
+    private final BubbleShape mOriginalShape = mGeometry.getOriginalShape();
+    private final PathBuffer mPathBuffer = new PathBuffer();
     private Paint mBorderPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-    private Path mBorderPath = new Path();
     private Paint mFillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private BubbleGeometryCache.Geometry mOwnGeometry = null; // 不使用共享缓存时自行持有的路径
+    private BubbleGeometryCache.Geometry mSharedGeometry = null; // 正在使用的共享路径
+    private Path mBorderPath = new Path();
     private Path mFillPath = new Path();
-    private float mFillPadding = 0;
+    private BubbleGeometryCache.Key mGeometryKey = new BubbleGeometryCache.Key();
+    private RectF mOvalRect = new RectF(); // 回放圆弧指令用
     private int mFillColor = 0xCC000000;
     private int mBorderColor = Color.WHITE;
-    private PointF mArrowTo = new PointF(0, 0);
-
-    private static class Shape {
-        RectF Rect = new RectF();
-        float BorderWidth = 0;
-        float ArrowHeight = 0;
-        float ArrowWidth = 0;
-        float ArrowDelta = 0;
-        float ArrowPeakX = 0;
-        float ArrowPeakY = 0;
-        float TopLeftRadius = 0;
-        float TopRightRadius = 0;
-        float BottomLeftRadius = 0;
-        float BottomRightRadius = 0;
-
-        void set(Shape shape) {
-            this.Rect.set(shape.Rect);
-            this.BorderWidth = shape.BorderWidth;
-            this.ArrowHeight = shape.ArrowHeight;
-            this.ArrowWidth = shape.ArrowWidth;
-            this.ArrowDelta = shape.ArrowDelta;
-            this.ArrowPeakX = shape.ArrowPeakX;
-            this.ArrowPeakY = shape.ArrowPeakY;
-            this.TopLeftRadius = shape.TopLeftRadius;
-            this.TopRightRadius = shape.TopRightRadius;
-            this.BottomLeftRadius = shape.BottomLeftRadius;
-            this.BottomRightRadius = shape.BottomRightRadius;
-        }
+
+    // 脏标记，记录自上次 updateShapes 以来哪些输入发生了变化，未变化时跳过路径重建
+    private static final int DIRTY_RECT = 1;
+    private static final int DIRTY_BORDER = 1 << 1;
+    private static final int DIRTY_CORNER = 1 << 2;
+    private static final int DIRTY_ARROW = 1 << 3;
+    private static final int DIRTY_ARROW_PEAK = 1 << 4;
+    private static final int DIRTY_COLOR = 1 << 5;
+    private static final int DIRTY_RENDER_MODE = 1 << 6;
+    private static final int DIRTY_SHAPE_MASK = DIRTY_RECT | DIRTY_BORDER | DIRTY_CORNER | DIRTY_ARROW | DIRTY_ARROW_PEAK
+            | DIRTY_RENDER_MODE;
+    // 九宫格模式下，只有这些样式变化才需要更换模板，尺寸与箭头位置变化只影响切片位置
+    private static final int DIRTY_TEMPLATE_MASK = DIRTY_BORDER | DIRTY_CORNER | DIRTY_ARROW | DIRTY_COLOR
+            | DIRTY_RENDER_MODE;
+    private int mDirtyFlags = DIRTY_SHAPE_MASK;
+    private final BubbleMetrics mMetrics;
+
+    private BubbleStyle.RenderMode mRenderMode = BubbleStyle.RenderMode.Path;
+    private boolean mPathsValid = false;
+    private BubbleNineSlice.Template mTemplate = null;
+    private BubbleNineSlice.Key mTemplateKey = new BubbleNineSlice.Key();
+    private Paint mBitmapPaint = new Paint();
+    private Rect mSrcRect = new Rect();
+    private Rect mDstRect = new Rect();
+    private int[] mSliceXs = new int[6];
+    private int[] mSliceYs = new int[6];
+    private boolean mOutlineDirty = true;
+
+    // Android 5.0 以下由位图绘制阴影，气泡主体向内缩进以容纳阴影
+    private float mShadowElevation = 0;
+    private Rect mShadowInsets = new Rect();
+    private Bitmap mShadowBitmap = null;
+    private BubbleShadow.Key mShadowKey = new BubbleShadow.Key();
+    private Paint mShadowPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private RectF mShadowRect = new RectF();
+
+    // 透明度与颜色滤镜直接作用于画笔，View 淡入淡出时无需离屏缓冲
+    private int mAlpha = 0xFF;
+
+    // 形状过渡中每帧都不同，不使用共享缓存与九宫格模板，路径直接重建到自有的 Path 中
+    private boolean mAnimating = false;
+    private ColorFilter mColorFilter = null;
+
+    BubbleDrawable(BubbleMetrics metrics) {
+        mMetrics = metrics;
     }
 
     void resetRect(int width, int height) {
-        mOriginalShape.Rect.set(0, 0, width, height);
+        // 坐标相对于气泡主体，阴影缩进在绘制时平移
+        width -= mShadowInsets.left + mShadowInsets.right;
+        height -= mShadowInsets.top + mShadowInsets.bottom;
+        if (mOriginalShape.Rect.left != 0 || mOriginalShape.Rect.top != 0
+                || mOriginalShape.Rect.right != width || mOriginalShape.Rect.bottom != height) {
+            mOriginalShape.Rect.set(0, 0, width, height);
+            mDirtyFlags |= DIRTY_RECT;
+        }
+    }
+
+    /**
+     * 设置位图阴影的高度，为0时不绘制阴影
+     * 仅用于 Android 5.0 以下，新版本由系统根据 {@link #getOutline(Outline)} 绘制阴影
+     */
+    void setShadowElevation(float elevation) {
+        if (mShadowElevation != elevation) {
+            mShadowElevation = elevation;
+            BubbleShadow.getInsets(elevation, mShadowInsets);
+            mShadowBitmap = null;
+            mDirtyFlags |= DIRTY_RECT;
+        }
+    }
+
+    /**
+     * @return 阴影在四周占用的空间
+     */
+    Rect getShadowInsets() {
+        return mShadowInsets;
     }
 
     void setFillColor(int fillColor) {
-        mFillColor = fillColor;
+        if (mFillColor != fillColor) {
+            mFillColor = fillColor;
+            mDirtyFlags |= DIRTY_COLOR;
+        }
     }
 
     void setBorderColor(int borderColor) {
-        mBorderColor = borderColor;
+        if (mBorderColor != borderColor) {
+            mBorderColor = borderColor;
+            mDirtyFlags |= DIRTY_COLOR;
+        }
     }
 
     void setBorderWidth(float borderWidth) {
-        mOriginalShape.BorderWidth = borderWidth;
+        if (mOriginalShape.BorderWidth != borderWidth) {
+            mOriginalShape.BorderWidth = borderWidth;
+            mDirtyFlags |= DIRTY_BORDER;
+        }
     }
 
     void setFillPadding(float fillPadding) {
-        mFillPadding = fillPadding;
-    }
-
-    void updateShapes() {
-        updateBorderShape();
-        updateFillShape();
-    }
-
-    private void updateBorderShape() {
-        mBorderShape.set(mOriginalShape);
-        mBorderShape.Rect.set(  // 内缩四周1/2的边线厚度，使得边线能够完全显示
-                mOriginalShape.Rect.left + mOriginalShape.BorderWidth / 2 + (mArrowDirection.isLeft() ? mOriginalShape.ArrowHeight : 0),
-                mOriginalShape.Rect.top + mOriginalShape.BorderWidth / 2 + (mArrowDirection.isUp() ? mOriginalShape.ArrowHeight : 0),
-                mOriginalShape.Rect.right - mOriginalShape.BorderWidth / 2 - (mArrowDirection.isRight() ? mOriginalShape.ArrowHeight : 0),
-                mOriginalShape.Rect.bottom - mOriginalShape.BorderWidth / 2 - (mArrowDirection.isDown() ? mOriginalShape.ArrowHeight : 0)
-        );
-
-        // 外层的箭头顶点位置通过箭头位置策略、箭头偏移设定、目标位置决定
-        updateBorderArrowPeak(mArrowDirection, mArrowPosPolicy, mArrowTo, mBorderShape);
-
-        updatePath(mBorderShape, mBorderPath);
-    }
-
-    private void updateFillShape() {
-        mFillShape.set(mBorderShape);
-        mFillShape.BorderWidth = 0;
-        mFillShape.Rect.set(
-                mOriginalShape.Rect.left + mOriginalShape.BorderWidth + mFillPadding + (mArrowDirection.isLeft() ? mOriginalShape.ArrowHeight : 0),
-                mOriginalShape.Rect.top + mOriginalShape.BorderWidth + mFillPadding + (mArrowDirection.isUp() ? mOriginalShape.ArrowHeight : 0),
-                mOriginalShape.Rect.right - mOriginalShape.BorderWidth - mFillPadding - (mArrowDirection.isRight() ? mOriginalShape.ArrowHeight : 0),
-                mOriginalShape.Rect.bottom - mOriginalShape.BorderWidth - mFillPadding - (mArrowDirection.isDown() ? mOriginalShape.ArrowHeight : 0)
-        );
-        mFillShape.TopLeftRadius = Math.max(0, mOriginalShape.TopLeftRadius - mOriginalShape.BorderWidth / 2 - mFillPadding);
-        mFillShape.TopRightRadius = Math.max(0, mOriginalShape.TopRightRadius - mOriginalShape.BorderWidth / 2 - mFillPadding);
-        mFillShape.BottomLeftRadius = Math.max(0, mOriginalShape.BottomLeftRadius - mOriginalShape.BorderWidth / 2 - mFillPadding);
-        mFillShape.BottomRightRadius = Math.max(0, mOriginalShape.BottomRightRadius - mOriginalShape.BorderWidth / 2 - mFillPadding);
-
-        double w = mOriginalShape.ArrowWidth - 2 * (mOriginalShape.BorderWidth / 2 + mFillPadding) / Math.sin(Math.atan(mOriginalShape.ArrowHeight / (mOriginalShape.ArrowWidth / 2)));
-        double h = w * mOriginalShape.ArrowHeight / mOriginalShape.ArrowWidth;
-
-        mFillShape.ArrowHeight = (float) (h + mOriginalShape.BorderWidth / 2 + mFillPadding);
-        mFillShape.ArrowWidth = mFillShape.ArrowHeight * mOriginalShape.ArrowWidth / mOriginalShape.ArrowHeight;
-
-        // 内层的箭头顶点位置通过外层边线上的顶点位置来计算
-        updateFillArrowPeak(mArrowDirection, mBorderShape, mFillShape);
-
-        updatePath(mFillShape, mFillPath);
-    }
-
-    private static void updateFillArrowPeak(BubbleStyle.ArrowDirection direction, Shape borderShape, Shape outFillShape) {
-        switch (direction) {
-            case Left:
-                outFillShape.ArrowPeakX = outFillShape.Rect.left - outFillShape.ArrowHeight;
-                outFillShape.ArrowPeakY = borderShape.ArrowPeakY;
-                break;
-            case Right:
-                outFillShape.ArrowPeakX = outFillShape.Rect.right + outFillShape.ArrowHeight;
-                outFillShape.ArrowPeakY = borderShape.ArrowPeakY;
-                break;
-            case Up:
-                outFillShape.ArrowPeakX = borderShape.ArrowPeakX;
-                outFillShape.ArrowPeakY = outFillShape.Rect.top - outFillShape.ArrowHeight;
-                break;
-            case Down:
-                outFillShape.ArrowPeakX = borderShape.ArrowPeakX;
-                outFillShape.ArrowPeakY = outFillShape.Rect.bottom + outFillShape.ArrowHeight;
-                break;
-            default:
-                break;
-        }
-    }
-
-    private void updateBorderArrowPeak(BubbleStyle.ArrowDirection direction, BubbleStyle.ArrowPosPolicy policy, PointF arrowTo, Shape outShape) {
-        switch (direction) {
-            case Left:
-                outShape.ArrowPeakX = outShape.Rect.left - outShape.ArrowHeight;
-                outShape.ArrowPeakY = bound(outShape.Rect.top + outShape.TopLeftRadius + outShape.ArrowWidth / 2 + outShape.BorderWidth / 2,
-                        getLeftRightArrowPeakY(policy, arrowTo, outShape), // 确保弧角的显示
-                        outShape.Rect.bottom - outShape.BottomLeftRadius - outShape.ArrowWidth / 2 - outShape.BorderWidth / 2);
-                break;
-            case Up:
-                outShape.ArrowPeakX = bound(outShape.Rect.left + outShape.TopLeftRadius + outShape.ArrowWidth / 2 + outShape.BorderWidth / 2,
-                        getUpDownArrowPeakX(policy, arrowTo, outShape),
-                        outShape.Rect.right - outShape.TopRightRadius - outShape.ArrowWidth / 2 - outShape.BorderWidth / 2);
-                outShape.ArrowPeakY = outShape.Rect.top - outShape.ArrowHeight;
-                break;
-            case Right:
-                outShape.ArrowPeakX = outShape.Rect.right + outShape.ArrowHeight;
-                outShape.ArrowPeakY = bound(outShape.Rect.top + outShape.TopRightRadius + outShape.ArrowWidth / 2 + outShape.BorderWidth / 2,
-                        getLeftRightArrowPeakY(policy, arrowTo, outShape),
-                        outShape.Rect.bottom - outShape.BottomRightRadius - outShape.ArrowWidth / 2 - outShape.BorderWidth / 2);
-                break;
-            case Down:
-                outShape.ArrowPeakX = bound(outShape.Rect.left + outShape.BottomLeftRadius + outShape.ArrowWidth / 2 + outShape.BorderWidth / 2,
-                        getUpDownArrowPeakX(policy, arrowTo, outShape),
-                        outShape.Rect.right - outShape.BottomRightRadius - outShape.ArrowWidth / 2 - outShape.BorderWidth / 2);
-                outShape.ArrowPeakY = outShape.Rect.bottom + outShape.ArrowHeight;
-                break;
+        if (mGeometry.getFillPadding() != fillPadding) {
+            mGeometry.setFillPadding(fillPadding);
+            mDirtyFlags |= DIRTY_BORDER;
+        }
+    }
+
+    /**
+     * 根据脏标记重建边框与填充路径
+     * 仅颜色变化或无任何变化时不重建路径，只在颜色变化时重绘
+     *
+     * @return 是否重建了路径
+     */
+    boolean updateShapes() {
+        final int dirtyFlags = mDirtyFlags;
+        mDirtyFlags = 0;
+        if ((dirtyFlags & (DIRTY_SHAPE_MASK | DIRTY_COLOR)) != 0) {
+            mOutlineDirty = true;
+        }
+
+        if ((dirtyFlags & DIRTY_SHAPE_MASK) != 0 && !mAnimating) {
+            mShadowBitmap = null; // 过渡中沿用原有的阴影位图
+        }
+
+        if (mRenderMode == BubbleStyle.RenderMode.NineSlice && !mAnimating) {
+            final boolean traced = BubbleTrace.begin(BubbleTrace.UPDATE_SHAPES);
+            final boolean rebuilt = updateNineSlice(dirtyFlags);
+            BubbleTrace.end(traced);
+            return rebuilt;
+        }
+
+        if ((dirtyFlags & DIRTY_SHAPE_MASK) == 0) {
+            mMetrics.count(BubbleMetrics.PATH_REBUILD_SKIPPED);
+            if ((dirtyFlags & DIRTY_COLOR) != 0) {
+                invalidateSelf();
+            }
+            return false;
+        }
+
+        final boolean traced = BubbleTrace.begin(BubbleTrace.UPDATE_SHAPES);
+        final long startNanos = BubbleMetrics.start();
+        mGeometry.updateShapes();
+        updatePaths();
+        mPathsValid = true;
+        mMetrics.end(BubbleMetrics.PATH_REBUILD, startNanos);
+        BubbleTrace.end(traced);
+        invalidateSelf();
+        return true;
+    }
+
+    /**
+     * 九宫格模式下只更新形状参数（箭头顶点等），不构建路径
+     * 样式变化时丢弃当前模板，在绘制时重新获取
+     */
+    private boolean updateNineSlice(int dirtyFlags) {
+        if ((dirtyFlags & DIRTY_TEMPLATE_MASK) != 0) {
+            mTemplate = null;
+        }
+
+        if ((dirtyFlags & DIRTY_SHAPE_MASK) != 0) {
+            mGeometry.updateShapes();
+            mPathsValid = false;
+        }
+
+        if (dirtyFlags != 0) {
+            invalidateSelf();
+        } else {
+            mMetrics.count(BubbleMetrics.PATH_REBUILD_SKIPPED);
+        }
+        return false;
+    }
+
+    /**
+     * 取得并清除轮廓变化标记，形状或填充色变化后需通知View刷新轮廓
+     *
+     * @return 自上次调用以来轮廓是否可能变化
+     */
+    boolean consumeOutlineDirty() {
+        final boolean dirty = mOutlineDirty;
+        mOutlineDirty = false;
+        return dirty;
+    }
+
+    /**
+     * 设置是否处于形状过渡中，结束时按原有方式重新生成
+     */
+    void setAnimating(boolean animating) {
+        if (mAnimating != animating) {
+            mAnimating = animating;
+            mDirtyFlags |= DIRTY_RENDER_MODE;
+        }
+    }
+
+    void setRenderMode(BubbleStyle.RenderMode renderMode) {
+        if (mRenderMode != renderMode) {
+            mRenderMode = renderMode;
+            mTemplate = null;
+            mDirtyFlags |= DIRTY_RENDER_MODE;
+        }
+    }
+
+    /**
+     * 取得与当前形状对应的路径，优先从共享缓存中获取，未命中时构建并放入缓存
+     */
+    private void updatePaths() {
+        if (!BubbleGeometryCache.isEnabled() || mAnimating) {
+            if (mOwnGeometry == null) {
+                mOwnGeometry = new BubbleGeometryCache.Geometry();
+            }
+            buildGeometry(mOwnGeometry);
+            useSharedGeometry(null);
+            return;
+        }
+
+        BubbleShape borderShape = mGeometry.getBorderShape();
+        BubbleGeometryCache.Key key = mGeometryKey;
+        key.width = mOriginalShape.Rect.width();
+        key.height = mOriginalShape.Rect.height();
+        key.borderWidth = mOriginalShape.BorderWidth;
+        key.fillPadding = mGeometry.getFillPadding();
+        key.arrowHeight = mOriginalShape.ArrowHeight;
+        key.arrowWidth = mOriginalShape.ArrowWidth;
+        key.arrowPeakX = mArrowDirection.isUp() || mArrowDirection.isDown() ? borderShape.ArrowPeakX : 0;
+        key.arrowPeakY = mArrowDirection.isLeft() || mArrowDirection.isRight() ? borderShape.ArrowPeakY : 0;
+        key.topLeftRadius = mOriginalShape.TopLeftRadius;
+        key.topRightRadius = mOriginalShape.TopRightRadius;
+        key.bottomRightRadius = mOriginalShape.BottomRightRadius;
+        key.bottomLeftRadius = mOriginalShape.BottomLeftRadius;
+        key.arrowDirection = mArrowDirection.getValue();
+
+        BubbleGeometryCache.Geometry geometry = BubbleGeometryCache.get(key);
+        if (geometry == null) {
+            // 未命中时复用已淘汰的路径与键，行高各异的列表中也不会反复分配
+            geometry = BubbleGeometryCache.obtain();
+            geometry.key.set(key);
+            buildGeometry(geometry);
+            useSharedGeometry(geometry);
+            BubbleGeometryCache.put(geometry);
+        } else {
+            mBorderPath = geometry.borderPath;
+            mFillPath = geometry.fillPath;
+            useSharedGeometry(geometry);
+        }
+    }
+
+    /**
+     * 切换正在使用的共享路径，先登记新的再释放旧的
+     */
+    private void useSharedGeometry(BubbleGeometryCache.Geometry geometry) {
+        if (mSharedGeometry == geometry) {
+            return;
         }
+        if (geometry != null) {
+            BubbleGeometryCache.acquire(geometry);
+        }
+        if (mSharedGeometry != null) {
+            BubbleGeometryCache.release(mSharedGeometry);
+        }
+        mSharedGeometry = geometry;
+    }
+
+    private void buildGeometry(BubbleGeometryCache.Geometry geometry) {
+        mGeometry.buildBorderPath(mPathBuffer);
+        replay(mPathBuffer, geometry.borderPath, mOvalRect);
+        mGeometry.buildFillPath(mPathBuffer);
+        replay(mPathBuffer, geometry.fillPath, mOvalRect);
+        mBorderPath = geometry.borderPath;
+        mFillPath = geometry.fillPath;
     }
 
     void setCornerRadius(float topLeft, float topRight, float bottomRight, float bottomLeft) {
-        mOriginalShape.TopLeftRadius = topLeft;
-        mOriginalShape.TopRightRadius = topRight;
-        mOriginalShape.BottomRightRadius = bottomRight;
-        mOriginalShape.BottomLeftRadius = bottomLeft;
+        if (mOriginalShape.TopLeftRadius != topLeft
+                || mOriginalShape.TopRightRadius != topRight
+                || mOriginalShape.BottomRightRadius != bottomRight
+                || mOriginalShape.BottomLeftRadius != bottomLeft) {
+            mOriginalShape.TopLeftRadius = topLeft;
+            mOriginalShape.TopRightRadius = topRight;
+            mOriginalShape.BottomRightRadius = bottomRight;
+            mOriginalShape.BottomLeftRadius = bottomLeft;
+            mDirtyFlags |= DIRTY_CORNER;
+        }
     }
 
     void setArrowDirection(BubbleStyle.ArrowDirection arrowDirection) {
-        mArrowDirection = arrowDirection;
+        if (mArrowDirection != arrowDirection) {
+            mArrowDirection = arrowDirection;
+            mGeometry.setArrowDirection(arrowDirection.getValue());
+            mDirtyFlags |= DIRTY_ARROW;
+        }
     }
 
     void setArrowPosPolicy(BubbleStyle.ArrowPosPolicy arrowPosPolicy) {
-        mArrowPosPolicy = arrowPosPolicy;
+        if (mArrowPosPolicy != arrowPosPolicy) {
+            mArrowPosPolicy = arrowPosPolicy;
+            mGeometry.setArrowPosPolicy(arrowPosPolicy.getValue());
+            mDirtyFlags |= DIRTY_ARROW_PEAK;
+        }
     }
 
     void setArrowHeight(float arrowHeight) {
-        mOriginalShape.ArrowHeight = arrowHeight;
+        if (mOriginalShape.ArrowHeight != arrowHeight) {
+            mOriginalShape.ArrowHeight = arrowHeight;
+            mDirtyFlags |= DIRTY_ARROW;
+        }
     }
 
     void setArrowWidth(float arrowWidth) {
-        mOriginalShape.ArrowWidth = arrowWidth;
+        if (mOriginalShape.ArrowWidth != arrowWidth) {
+            mOriginalShape.ArrowWidth = arrowWidth;
+            mDirtyFlags |= DIRTY_ARROW;
+        }
     }
 
     /**
@@ -210,239 +361,255 @@ class BubbleDrawable extends Drawable {
      * @param y 目标中心y
      */
     void setArrowTo(float x, float y) {
-        mArrowTo.x = x;
-        mArrowTo.y = y;
+        // 目标坐标相对于View中心，而几何计算相对于气泡主体中心，两者相差阴影缩进的不对称部分
+        x -= (mShadowInsets.left - mShadowInsets.right) / 2f;
+        y -= (mShadowInsets.top - mShadowInsets.bottom) / 2f;
+        if (mGeometry.getArrowToX() != x || mGeometry.getArrowToY() != y) {
+            mGeometry.setArrowTo(x, y);
+            // 仅 TargetCenter 策略下箭头顶点依赖目标位置
+            if (mArrowPosPolicy == BubbleStyle.ArrowPosPolicy.TargetCenter) {
+                mDirtyFlags |= DIRTY_ARROW_PEAK;
+            }
+        }
     }
 
     void setArrowPosDelta(float arrowDelta) {
-        mOriginalShape.ArrowDelta = arrowDelta;
+        if (mOriginalShape.ArrowDelta != arrowDelta) {
+            mOriginalShape.ArrowDelta = arrowDelta;
+            // 仅 SelfBegin/SelfEnd 策略下箭头顶点依赖偏移量
+            if (mArrowPosPolicy == BubbleStyle.ArrowPosPolicy.SelfBegin
+                    || mArrowPosPolicy == BubbleStyle.ArrowPosPolicy.SelfEnd) {
+                mDirtyFlags |= DIRTY_ARROW_PEAK;
+            }
+        }
     }
 
     @Override
     public void draw(@NonNull Canvas canvas) {
+        final long startNanos = BubbleMetrics.start();
+        if (mShadowElevation > 0) {
+            final int saveCount = canvas.save();
+            canvas.translate(mShadowInsets.left, mShadowInsets.top);
+            drawShadow(canvas);
+            drawBubble(canvas);
+            canvas.restoreToCount(saveCount);
+        } else {
+            drawBubble(canvas);
+        }
+        mMetrics.end(BubbleMetrics.DRAW, startNanos);
+    }
+
+    private void drawBubble(Canvas canvas) {
+        if (mRenderMode == BubbleStyle.RenderMode.NineSlice && !mAnimating && drawNineSlice(canvas)) {
+            return;
+        }
+
+        if (!mPathsValid) {
+            // 九宫格模式下尺寸过小无法切片时，才按需构建路径
+            updatePaths();
+            mPathsValid = true;
+        }
+
         mFillPaint.setStyle(Paint.Style.FILL);
-        mFillPaint.setColor(mFillColor);
+        mFillPaint.setColor(modulateAlpha(mFillColor, mAlpha));
         canvas.drawPath(mFillPath, mFillPaint);
 
-        if (mBorderShape.BorderWidth > 0) {
+        float borderWidth = mGeometry.getBorderShape().BorderWidth;
+        if (borderWidth > 0) {
             mBorderPaint.setStyle(Paint.Style.STROKE);
             mBorderPaint.setStrokeCap(Paint.Cap.ROUND);
             mBorderPaint.setStrokeJoin(Paint.Join.ROUND);
-            mBorderPaint.setStrokeWidth(mBorderShape.BorderWidth);
-            mBorderPaint.setColor(mBorderColor);
+            mBorderPaint.setStrokeWidth(borderWidth);
+            mBorderPaint.setColor(modulateAlpha(mBorderColor, mAlpha));
             canvas.drawPath(mBorderPath, mBorderPaint);
         }
     }
 
+    /**
+     * 将缓存的阴影位图拉伸到当前尺寸，向下偏移后绘制在气泡下方
+     */
+    private void drawShadow(Canvas canvas) {
+        if (mShadowBitmap == null) {
+            final BubbleShadow.Key key = mShadowKey;
+            final BubbleShape borderShape = mGeometry.getBorderShape();
+            key.width = BubbleShadow.bucketSize(mOriginalShape.Rect.width());
+            key.height = BubbleShadow.bucketSize(mOriginalShape.Rect.height());
+            key.arrowHeight = mOriginalShape.ArrowHeight;
+            key.arrowWidth = mOriginalShape.ArrowWidth;
+            key.arrowDelta = mArrowDirection.isUp() || mArrowDirection.isDown()
+                    ? BubbleShadow.bucketArrow(borderShape.ArrowPeakX - mOriginalShape.Rect.left)
+                    : mArrowDirection.isLeft() || mArrowDirection.isRight()
+                    ? BubbleShadow.bucketArrow(borderShape.ArrowPeakY - mOriginalShape.Rect.top) : 0;
+            key.topLeftRadius = mOriginalShape.TopLeftRadius;
+            key.topRightRadius = mOriginalShape.TopRightRadius;
+            key.bottomRightRadius = mOriginalShape.BottomRightRadius;
+            key.bottomLeftRadius = mOriginalShape.BottomLeftRadius;
+            key.arrowDirection = mArrowDirection.getValue();
+            key.elevation = mShadowElevation;
+            mShadowBitmap = BubbleShadow.obtain(key);
+            if (mShadowBitmap == null) {
+                return;
+            }
+        }
+
+        final int radius = BubbleShadow.getBlurRadius(mShadowElevation);
+        final int offsetY = BubbleShadow.getOffsetY(mShadowElevation);
+        mShadowRect.set(mOriginalShape.Rect.left - radius, mOriginalShape.Rect.top - radius + offsetY,
+                mOriginalShape.Rect.right + radius, mOriginalShape.Rect.bottom + radius + offsetY);
+        // 阴影深浅随填充色透明度变化，半透明气泡的阴影也相应变淡
+        mShadowPaint.setColor(Color.argb(BubbleShadow.SHADOW_ALPHA * Color.alpha(mFillColor) / 255 * mAlpha / 255, 0, 0, 0));
+        canvas.drawBitmap(mShadowBitmap, null, mShadowRect, mShadowPaint);
+    }
+
+    private boolean drawNineSlice(Canvas canvas) {
+        if (mTemplate == null) {
+            final BubbleNineSlice.Key key = mTemplateKey;
+            key.borderWidth = mOriginalShape.BorderWidth;
+            key.fillPadding = mGeometry.getFillPadding();
+            key.arrowHeight = mOriginalShape.ArrowHeight;
+            key.arrowWidth = mOriginalShape.ArrowWidth;
+            key.topLeftRadius = mOriginalShape.TopLeftRadius;
+            key.topRightRadius = mOriginalShape.TopRightRadius;
+            key.bottomRightRadius = mOriginalShape.BottomRightRadius;
+            key.bottomLeftRadius = mOriginalShape.BottomLeftRadius;
+            key.arrowDirection = mArrowDirection.getValue();
+            key.fillColor = mFillColor;
+            key.borderColor = mBorderColor;
+            mTemplate = BubbleNineSlice.obtain(key);
+            if (mTemplate == null) {
+                return false;
+            }
+        }
+
+        final BubbleShape borderShape = mGeometry.getBorderShape();
+        mBitmapPaint.setAlpha(mAlpha);
+        return BubbleNineSlice.draw(canvas, mTemplate,
+                (int) mOriginalShape.Rect.width(), (int) mOriginalShape.Rect.height(),
+                borderShape.ArrowPeakX, borderShape.ArrowPeakY,
+                mBitmapPaint, mSrcRect, mDstRect, mSliceXs, mSliceYs);
+    }
+
+    /**
+     * 提供气泡轮廓，供 RenderThread 绘制 elevation 阴影
+     * 带箭头的路径不是凸多边形，Android 10 以下无法作为轮廓，此时退化为气泡主体的圆角矩形；
+     * 九宫格模式下不构建路径，同样使用圆角矩形
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    @Override
+    public void getOutline(@NonNull Outline outline) {
+        // 有边线时取边线路径，更贴近可见轮廓
+        final BubbleShape shape = mOriginalShape.BorderWidth > 0 ? mGeometry.getBorderShape() : mGeometry.getFillShape();
+        final Path path = mOriginalShape.BorderWidth > 0 ? mBorderPath : mFillPath;
+        final boolean pathUsable = mRenderMode == BubbleStyle.RenderMode.Path && mPathsValid && !path.isEmpty();
+
+        if (pathUsable && (Build.VERSION.SDK_INT >= 29 /* Q */ || path.isConvex())) {
+            outline.setConvexPath(path);
+        } else {
+            final float radius = Math.min(Math.min(shape.TopLeftRadius, shape.TopRightRadius),
+                    Math.min(shape.BottomLeftRadius, shape.BottomRightRadius));
+            outline.setRoundRect(Math.round(shape.Rect.left), Math.round(shape.Rect.top),
+                    Math.round(shape.Rect.right), Math.round(shape.Rect.bottom), radius);
+        }
+        outline.setAlpha(Color.alpha(modulateAlpha(mFillColor, mAlpha)) / 255f);
+    }
+
     @Override
     public void setAlpha(int alpha) {
+        if (mAlpha != alpha) {
+            mAlpha = alpha;
+            mOutlineDirty = true;
+            invalidateSelf();
+        }
+    }
+
+    @Override
+    public int getAlpha() {
+        return mAlpha;
     }
 
     @Override
     public void setColorFilter(ColorFilter colorFilter) {
+        if (mColorFilter != colorFilter) {
+            mColorFilter = colorFilter;
+            mFillPaint.setColorFilter(colorFilter);
+            mBorderPaint.setColorFilter(colorFilter);
+            mBitmapPaint.setColorFilter(colorFilter);
+            invalidateSelf();
+        }
     }
 
+    @Override
+    public ColorFilter getColorFilter() {
+        return mColorFilter;
+    }
+
+    /**
+     * 仅无圆角、无箭头、无阴影、填充无内缩且填充与边线均不透明时能完全覆盖边界
+     */
     @Override
     public int getOpacity() {
-        return PixelFormat.UNKNOWN;
-    }
-
-    private void updatePath(Shape shape, Path path) {
-        path.reset();
-        switch (mArrowDirection) {
-            case Up:
-                buildWithUpArrow(shape, path);
-                break;
-            case Down:
-                buildWithDownArrow(shape, path);
-                break;
-            case Left:
-                buildWithLeftArrow(shape, path);
-                break;
-            case Right:
-                buildWithRightArrow(shape, path);
-                break;
-            default:
-                buildWithNoneArrow(shape, path);
-                break;
-        }
-    }
-
-    private void buildWithNoneArrow(Shape shape, Path path) {
-        RectF rect = shape.Rect;
-        path.moveTo(rect.left, rect.top + shape.TopLeftRadius);
-        compatPathArcTo(path, rect.left, rect.top,
-                rect.left + 2 * shape.TopLeftRadius, rect.top + 2 * shape.TopLeftRadius, 180, 90);
-        path.lineTo(rect.right - shape.TopRightRadius, rect.top);
-        buildTopRightCorner(shape, path);
-        path.lineTo(rect.right, rect.bottom - shape.BottomRightRadius);
-        buildBottomRightCorner(shape, path);
-        path.lineTo(rect.left + shape.BottomLeftRadius, rect.bottom);
-        buildBottomLeftCorner(shape, path);
-        path.lineTo(rect.left, rect.top + shape.TopLeftRadius);
-    }
-
-    private void buildWithLeftArrow(Shape shape, Path path) {
-        RectF rect = shape.Rect;
-        path.moveTo(shape.ArrowPeakX, shape.ArrowPeakY); // 从箭头顶点开始沿顺时针方向绘制
-        path.lineTo(rect.left, shape.ArrowPeakY - shape.ArrowWidth / 2);
-        path.lineTo(rect.left, rect.top + shape.TopLeftRadius); // 左上竖线
-        buildTopLeftCorner(shape, path); // 左上弧角
-        path.lineTo(rect.right - shape.TopRightRadius, rect.top); // 上横线
-        buildTopRightCorner(shape, path); // 右上弧角
-        path.lineTo(rect.right, rect.bottom - shape.BottomRightRadius); // 右侧竖线
-        buildBottomRightCorner(shape, path); // 右下弧角
-        path.lineTo(rect.left + shape.BottomLeftRadius, rect.bottom); // 底部横向
-        buildBottomLeftCorner(shape, path); // 左下弧角
-        path.lineTo(rect.left, shape.ArrowPeakY + shape.ArrowWidth / 2); // 左下竖线
-        path.lineTo(shape.ArrowPeakX, shape.ArrowPeakY); // 回到顶点
-    }
-
-    private void buildWithUpArrow(Shape shape, Path path) {
-        RectF rect = shape.Rect;
-        path.moveTo(shape.ArrowPeakX, shape.ArrowPeakY);
-        path.lineTo(shape.ArrowPeakX + shape.ArrowWidth / 2, rect.top);
-        path.lineTo(rect.right - shape.TopRightRadius, rect.top);
-        buildTopRightCorner(shape, path);
-        path.lineTo(rect.right, rect.bottom - shape.BottomRightRadius);
-        buildBottomRightCorner(shape, path);
-        path.lineTo(rect.left + shape.BottomLeftRadius, rect.bottom);
-        buildBottomLeftCorner(shape, path);
-        path.lineTo(rect.left, rect.top + shape.TopLeftRadius);
-        buildTopLeftCorner(shape, path);
-        path.lineTo(shape.ArrowPeakX - shape.ArrowWidth / 2, rect.top);
-        path.lineTo(shape.ArrowPeakX, shape.ArrowPeakY);
-    }
-
-    private void buildWithRightArrow(Shape shape, Path path) {
-        RectF rect = shape.Rect;
-        path.moveTo(shape.ArrowPeakX, shape.ArrowPeakY);
-        path.lineTo(rect.right, shape.ArrowPeakY + shape.ArrowWidth / 2);
-        path.lineTo(rect.right, rect.bottom - shape.BottomRightRadius);
-        buildBottomRightCorner(shape, path);
-        path.lineTo(rect.left + shape.BottomLeftRadius, rect.bottom);
-        buildBottomLeftCorner(shape, path);
-        path.lineTo(rect.left, rect.top + shape.TopLeftRadius);
-        buildTopLeftCorner(shape, path);
-        path.lineTo(rect.right - shape.TopRightRadius, rect.top);
-        buildTopRightCorner(shape, path);
-        path.lineTo(rect.right, shape.ArrowPeakY - shape.ArrowWidth / 2);
-        path.lineTo(shape.ArrowPeakX, shape.ArrowPeakY);
-    }
-
-    private void buildWithDownArrow(Shape shape, Path path) {
-        RectF rect = shape.Rect;
-        path.moveTo(shape.ArrowPeakX, shape.ArrowPeakY);
-        path.lineTo(shape.ArrowPeakX - shape.ArrowWidth / 2, rect.bottom);
-        path.lineTo(rect.left + shape.BottomLeftRadius, rect.bottom);
-        buildBottomLeftCorner(shape, path);
-        path.lineTo(rect.left, rect.top + shape.TopLeftRadius);
-        buildTopLeftCorner(shape, path);
-        path.lineTo(rect.right - shape.TopRightRadius, rect.top);
-        buildTopRightCorner(shape, path);
-        path.lineTo(rect.right, rect.bottom - shape.BottomRightRadius);
-        buildBottomRightCorner(shape, path);
-        path.lineTo(shape.ArrowPeakX + shape.ArrowWidth / 2, rect.bottom);
-        path.lineTo(shape.ArrowPeakX, shape.ArrowPeakY);
-    }
-
-    private static float getLeftRightArrowPeakY(BubbleStyle.ArrowPosPolicy policy, PointF arrowTo, Shape shape) {
-        float y;
-        switch (policy) {
-            case TargetCenter:
-                y = shape.Rect.centerY() + arrowTo.y;
-                break;
-            case SelfCenter:
-                y = shape.Rect.centerY();
-                break;
-            case SelfBegin:
-                y = shape.Rect.top;
-                y += shape.ArrowDelta;
-                break;
-            case SelfEnd:
-                y = shape.Rect.bottom;
-                y -= shape.ArrowDelta;
-                break;
-            default:
-                y = 0;
-        }
-        return y;
-    }
-
-    private static float getUpDownArrowPeakX(BubbleStyle.ArrowPosPolicy policy, PointF arrowTo, Shape shape) {
-        float x;
-        switch (policy) {
-            case TargetCenter:
-                x = shape.Rect.centerX() + arrowTo.x;
-                break;
-            case SelfCenter:
-                x = shape.Rect.centerX();
-                break;
-            case SelfBegin:
-                x = shape.Rect.left;
-                x += shape.ArrowDelta;
-                break;
-            case SelfEnd:
-                x = shape.Rect.right;
-                x -= shape.ArrowDelta;
-                break;
-            default:
-                x = 0;
-        }
-
-        return x;
-    }
-
-    private void buildTopLeftCorner(Shape shape, Path path) {
-        compatPathArcTo(path,
-                shape.Rect.left,
-                shape.Rect.top,
-                shape.Rect.left + 2 * shape.TopLeftRadius,
-                shape.Rect.top + 2 * shape.TopLeftRadius,
-                180,
-                90);
-    }
-
-    private void buildTopRightCorner(Shape shape, Path path) {
-        compatPathArcTo(path,
-                shape.Rect.right - 2 * shape.TopRightRadius,
-                shape.Rect.top,
-                shape.Rect.right,
-                shape.Rect.top + 2 * shape.TopRightRadius,
-                270,
-                90);
-    }
-
-    private void buildBottomRightCorner(Shape shape, Path path) {
-        compatPathArcTo(path,
-                shape.Rect.right - 2 * shape.BottomRightRadius,
-                shape.Rect.bottom - 2 * shape.BottomRightRadius,
-                shape.Rect.right,
-                shape.Rect.bottom,
-                0,
-                90);
-    }
-
-    private void buildBottomLeftCorner(Shape shape, Path path) {
-        compatPathArcTo(path,
-                shape.Rect.left,
-                shape.Rect.bottom - 2 * shape.BottomLeftRadius,
-                shape.Rect.left + 2 * shape.BottomLeftRadius,
-                shape.Rect.bottom,
-                90,
-                90);
-    }
-
-    private RectF mOvalRect = new RectF();
-
-    private void compatPathArcTo(Path path,
-                                 float left,
-                                 float top,
-                                 float right,
-                                 float bottom,
-                                 float startAngle,
-                                 float sweepAngle) {
-        mOvalRect.set(left, top, right, bottom);
-        path.arcTo(mOvalRect, startAngle, sweepAngle);
+        final int fillAlpha = Color.alpha(modulateAlpha(mFillColor, mAlpha));
+        final int borderAlpha = mOriginalShape.BorderWidth > 0 ? Color.alpha(modulateAlpha(mBorderColor, mAlpha)) : 0;
+        if (fillAlpha == 0 && borderAlpha == 0 && mShadowElevation <= 0) {
+            return PixelFormat.TRANSPARENT;
+        }
+
+        final boolean rectangular = !mArrowDirection.isLeft() && !mArrowDirection.isUp()
+                && !mArrowDirection.isRight() && !mArrowDirection.isDown()
+                && mOriginalShape.TopLeftRadius <= 0 && mOriginalShape.TopRightRadius <= 0
+                && mOriginalShape.BottomRightRadius <= 0 && mOriginalShape.BottomLeftRadius <= 0;
+        final boolean coversBounds = rectangular && mShadowElevation <= 0 && mColorFilter == null
+                && fillAlpha == 0xFF && mGeometry.getFillPadding() <= 0
+                && (mOriginalShape.BorderWidth <= 0 || borderAlpha == 0xFF);
+        return coversBounds ? PixelFormat.OPAQUE : PixelFormat.TRANSLUCENT;
+    }
+
+    /**
+     * 背景自身的绘制是否相互重叠，此时按绘制指令逐个应用透明度会与整体淡化不一致
+     * 阴影位于填充下方，边线压在填充之上
+     */
+    boolean hasOverlappingRendering() {
+        return mShadowElevation > 0
+                || (mOriginalShape.BorderWidth > 0 && Color.alpha(mBorderColor) > 0 && Color.alpha(mFillColor) > 0);
+    }
+
+    private static int modulateAlpha(int color, int alpha) {
+        if (alpha == 0xFF) {
+            return color;
+        }
+        return (color & 0x00FFFFFF) | ((Color.alpha(color) * alpha / 255) << 24);
+    }
+
+    /**
+     * 将路径指令回放到 Path 中
+     */
+    static void replay(PathBuffer buffer, Path path, RectF ovalRect) {
+        path.rewind();
+        final float[] data = buffer.data();
+        final int size = buffer.size();
+        int i = 0;
+        while (i < size) {
+            switch ((int) data[i]) {
+                case PathBuffer.CMD_MOVE_TO:
+                    path.moveTo(data[i + 1], data[i + 2]);
+                    i += 3;
+                    break;
+                case PathBuffer.CMD_LINE_TO:
+                    path.lineTo(data[i + 1], data[i + 2]);
+                    i += 3;
+                    break;
+                case PathBuffer.CMD_ARC_TO:
+                    ovalRect.set(data[i + 1], data[i + 2], data[i + 3], data[i + 4]);
+                    path.arcTo(ovalRect, data[i + 5], data[i + 6]);
+                    i += 7;
+                    break;
+                case PathBuffer.CMD_CLOSE:
+                    path.close();
+                    i += 1;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown path command: " + data[i]);
+            }
+        }
     }
 }
@@ -44,12 +44,23 @@ public class BubbleFrameLayout extends FrameLayout implements BubbleStyle, Bubbl
         mBubbleImpl.init(this, context, attrs);
     }
 
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        mBubbleImpl.onMeasure();
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+    }
+
     @Override
     protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
         super.onLayout(changed, left, top, right, bottom);
         mBubbleImpl.updateDrawable(right - left, bottom - top, true);
     }
 
+    @Override
+    public boolean hasOverlappingRendering() {
+        return mBubbleImpl.hasOverlappingRendering();
+    }
+
     @Override
     public void setPadding(int left, int top, int right, int bottom) {
         // noinspection ConstantConditions
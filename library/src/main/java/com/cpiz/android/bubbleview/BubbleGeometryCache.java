@@ -0,0 +1,224 @@
+package com.cpiz.android.bubbleview;
+
+import android.graphics.Path;
+
+import java.util.ArrayList;
+
+/**
+ * 进程内共享的气泡路径缓存
+ * 尺寸、圆角、箭头、边框等参数完全相同的气泡将共用同一组已构建好的路径，跳过重复的路径构建
+ * 缓存的路径构建后不再修改，只能用于绘制；淘汰后待不再被气泡使用时回收，供下次未命中时重新构建，避免反复分配 Path
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class BubbleGeometryCache {
+    private static final int DEFAULT_MAX_SIZE = 64;
+    private static final int MAX_POOL_SIZE = 8;
+
+    // 引用计数、缓存标记与回收池均以 sCache 为锁
+    private static final BubbleLruCache<Key, Geometry> sCache = new BubbleLruCache<Key, Geometry>(DEFAULT_MAX_SIZE) {
+        @Override
+        protected void onEntryRemoved(Key key, Geometry value) {
+            value.cached = false;
+            recycleIfUnused(value);
+        }
+    };
+    private static final ArrayList<Geometry> sPool = new ArrayList<>(MAX_POOL_SIZE);
+    private static volatile boolean sEnabled = true;
+
+    private BubbleGeometryCache() {
+    }
+
+    /**
+     * 设置是否启用共享缓存，默认启用
+     *
+     * @param enabled 是否启用
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+        if (!enabled) {
+            sCache.evictAll();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * 设置缓存的最大条目数，超出时淘汰最久未使用的路径
+     *
+     * @param maxSize 最大条目数，默认64
+     */
+    public static void setMaxSize(int maxSize) {
+        sCache.resize(maxSize);
+    }
+
+    public static int getMaxSize() {
+        return sCache.maxSize();
+    }
+
+    public static int getSize() {
+        return sCache.size();
+    }
+
+    public static int getHitCount() {
+        return sCache.hitCount();
+    }
+
+    public static int getMissCount() {
+        return sCache.missCount();
+    }
+
+    public static int getEvictionCount() {
+        return sCache.evictionCount();
+    }
+
+    /**
+     * 清空缓存，已在使用中的路径不受影响
+     */
+    public static void clear() {
+        sCache.evictAll();
+    }
+
+    static Geometry get(Key key) {
+        return sCache.get(key);
+    }
+
+    /**
+     * 取得一组空闲的路径，优先复用已淘汰且不再使用的
+     */
+    static Geometry obtain() {
+        synchronized (sCache) {
+            if (!sPool.isEmpty()) {
+                return sPool.remove(sPool.size() - 1);
+            }
+        }
+        return new Geometry();
+    }
+
+    /**
+     * 放入缓存，以 geometry.key 为键；调用前应已 {@link #acquire(Geometry)}，避免放入时即被淘汰回收
+     */
+    static void put(Geometry geometry) {
+        synchronized (sCache) {
+            geometry.cached = true;
+            sCache.put(geometry.key, geometry);
+        }
+    }
+
+    /**
+     * 气泡开始使用该路径
+     */
+    static void acquire(Geometry geometry) {
+        synchronized (sCache) {
+            geometry.users++;
+        }
+    }
+
+    /**
+     * 气泡不再使用该路径，已淘汰且无人使用时回收
+     */
+    static void release(Geometry geometry) {
+        synchronized (sCache) {
+            geometry.users--;
+            recycleIfUnused(geometry);
+        }
+    }
+
+    private static void recycleIfUnused(Geometry geometry) {
+        if (geometry.users == 0 && !geometry.cached && sPool.size() < MAX_POOL_SIZE) {
+            sPool.add(geometry);
+        }
+    }
+
+    /**
+     * 已构建的边框与填充路径，放入缓存后不可再修改
+     */
+    static final class Geometry {
+        final Key key = new Key();
+        final Path borderPath = new Path();
+        final Path fillPath = new Path();
+        int users = 0; // 正在使用的气泡数
+        boolean cached = false;
+    }
+
+    /**
+     * 决定气泡路径的全部参数，坐标均相对于气泡自身左上角
+     */
+    static final class Key {
+        float width;
+        float height;
+        float borderWidth;
+        float fillPadding;
+        float arrowHeight;
+        float arrowWidth;
+        float arrowPeakX;
+        float arrowPeakY;
+        float topLeftRadius;
+        float topRightRadius;
+        float bottomRightRadius;
+        float bottomLeftRadius;
+        int arrowDirection;
+
+        void set(Key key) {
+            width = key.width;
+            height = key.height;
+            borderWidth = key.borderWidth;
+            fillPadding = key.fillPadding;
+            arrowHeight = key.arrowHeight;
+            arrowWidth = key.arrowWidth;
+            arrowPeakX = key.arrowPeakX;
+            arrowPeakY = key.arrowPeakY;
+            topLeftRadius = key.topLeftRadius;
+            topRightRadius = key.topRightRadius;
+            bottomRightRadius = key.bottomRightRadius;
+            bottomLeftRadius = key.bottomLeftRadius;
+            arrowDirection = key.arrowDirection;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key key = (Key) o;
+            return arrowDirection == key.arrowDirection
+                    && Float.compare(width, key.width) == 0
+                    && Float.compare(height, key.height) == 0
+                    && Float.compare(borderWidth, key.borderWidth) == 0
+                    && Float.compare(fillPadding, key.fillPadding) == 0
+                    && Float.compare(arrowHeight, key.arrowHeight) == 0
+                    && Float.compare(arrowWidth, key.arrowWidth) == 0
+                    && Float.compare(arrowPeakX, key.arrowPeakX) == 0
+                    && Float.compare(arrowPeakY, key.arrowPeakY) == 0
+                    && Float.compare(topLeftRadius, key.topLeftRadius) == 0
+                    && Float.compare(topRightRadius, key.topRightRadius) == 0
+                    && Float.compare(bottomRightRadius, key.bottomRightRadius) == 0
+                    && Float.compare(bottomLeftRadius, key.bottomLeftRadius) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = arrowDirection;
+            result = 31 * result + Float.floatToIntBits(width);
+            result = 31 * result + Float.floatToIntBits(height);
+            result = 31 * result + Float.floatToIntBits(borderWidth);
+            result = 31 * result + Float.floatToIntBits(fillPadding);
+            result = 31 * result + Float.floatToIntBits(arrowHeight);
+            result = 31 * result + Float.floatToIntBits(arrowWidth);
+            result = 31 * result + Float.floatToIntBits(arrowPeakX);
+            result = 31 * result + Float.floatToIntBits(arrowPeakY);
+            result = 31 * result + Float.floatToIntBits(topLeftRadius);
+            result = 31 * result + Float.floatToIntBits(topRightRadius);
+            result = 31 * result + Float.floatToIntBits(bottomRightRadius);
+            result = 31 * result + Float.floatToIntBits(bottomLeftRadius);
+            return result;
+        }
+    }
+}
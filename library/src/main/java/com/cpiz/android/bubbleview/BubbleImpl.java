@@ -1,14 +1,21 @@
 package com.cpiz.android.bubbleview;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.TimeInterpolator;
+import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Color;
-import android.graphics.Point;
 import android.graphics.Rect;
 import android.os.Build;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.View;
+import android.view.ViewGroup;
+
+import com.cpiz.android.bubbleview.core.BubblePlacement;
+
 import java.lang.ref.WeakReference;
 
 import static com.cpiz.android.bubbleview.Utils.dp2px;
@@ -22,7 +29,8 @@ import static com.cpiz.android.bubbleview.Utils.dp2px;
 class BubbleImpl implements BubbleStyle {
     private View mParentView;
     private BubbleCallback mHolderCallback;
-    private BubbleDrawable mBubbleDrawable = new BubbleDrawable();
+    private final BubbleMetrics mMetrics = new BubbleMetrics();
+    private BubbleDrawable mBubbleDrawable = new BubbleDrawable(mMetrics);
     private ArrowDirection mArrowDirection = ArrowDirection.Auto;
     private ArrowDirection mDrawableArrowDirection = ArrowDirection.None;
     private ArrowPosPolicy mArrowPosPolicy = ArrowPosPolicy.TargetCenter;
@@ -40,17 +48,51 @@ class BubbleImpl implements BubbleStyle {
     private int mBorderColor = Color.WHITE;
     private float mBorderWidth = 0;
     private float mFillPadding = 0;
-    private View.OnLayoutChangeListener mOnLayoutChangeListener = new View.OnLayoutChangeListener() {
+    private RenderMode mRenderMode = RenderMode.Path;
+    private float mElevation = 0;
+
+    // 属性修改所需的最小更新粒度，同一帧内的修改合并后统一处理
+    private static final int CHANGE_REPAINT = 1;
+    private static final int CHANGE_GEOMETRY = 1 << 1;
+    private static final int CHANGE_ARROW_PEAK = 1 << 2;
+    private static final int CHANGE_LAYOUT = 1 << 3;
+    private int mPendingChanges = 0;
+    private boolean mApplyScheduled = false;
+    private final Runnable mApplyRunnable = new Runnable() {
         @Override
-        public void onLayoutChange(View v, int left, int top, int right, int bottom, int oldLeft, int oldTop,
-                int oldRight, int oldBottom) {
-            requestUpdateBubble();
+        public void run() {
+            mApplyScheduled = false;
+            applyPendingChanges();
+        }
+    };
+    private BubbleShapeAnimator mShapeAnimator = null;
+    private int mArrowToOffsetX = 0;
+    private int mArrowToOffsetY = 0;
+
+    // 由所在窗口的跟踪器在每帧绘制前统一检查目标位置，目标与气泡不在同一窗口时还需登记到目标所在窗口
+    private BubbleAnchorTracker mTracker = null;
+    private BubbleAnchorTracker mAnchorTracker = null;
+    private final BubbleAnchorTracker.Client mAnchorClient = new AnchorClient();
+
+    private View.OnAttachStateChangeListener mOnAttachStateChangeListener = new View.OnAttachStateChangeListener() {
+        @Override
+        public void onViewAttachedToWindow(View v) {
+            updateTracking();
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(View v) {
+            stopTracking();
+            if (mShapeAnimator != null) {
+                mShapeAnimator.cancel();
+            }
         }
     };
 
     void init(View view, Context context, AttributeSet attrs) {
         mParentView = view;
         mHolderCallback = (BubbleCallback) view;
+        mParentView.addOnAttachStateChangeListener(mOnAttachStateChangeListener);
 
         if (attrs != null) {
             TypedArray ta = context.obtainStyledAttributes(attrs, R.styleable.BubbleStyle);
@@ -78,6 +120,18 @@ class BubbleImpl implements BubbleStyle {
             mFillPadding = ta.getDimension(R.styleable.BubbleStyle_bb_fillPadding, 0);
             mBorderColor = ta.getColor(R.styleable.BubbleStyle_bb_borderColor, Color.WHITE);
             mBorderWidth = ta.getDimension(R.styleable.BubbleStyle_bb_borderWidth, 0);
+            mRenderMode = RenderMode.valueOf(
+                    ta.getInt(R.styleable.BubbleStyle_bb_renderMode, RenderMode.Path.getValue()));
+            mElevation = ta.getDimension(R.styleable.BubbleStyle_bb_elevation, 0);
+            if (ta.hasValue(R.styleable.BubbleStyle_bb_elevation)
+                    && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                // 阴影由 RenderThread 根据背景轮廓绘制
+                mParentView.setElevation(mElevation);
+            } else if (mElevation > 0 && Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+                // 旧版本没有 elevation，由背景绘制缓存的模糊位图作为阴影
+                mBubbleDrawable.setShadowElevation(mElevation);
+                BubbleShadow.registerTrimCallbacks(context);
+            }
             ta.recycle();
         }
         updateDrawable(mParentView.getWidth(), mParentView.getHeight(), false);
@@ -85,7 +139,10 @@ class BubbleImpl implements BubbleStyle {
 
     @Override
     public void setArrowDirection(ArrowDirection arrowDirection) {
-        mArrowDirection = arrowDirection;
+        if (mArrowDirection != arrowDirection) {
+            mArrowDirection = arrowDirection;
+            markChanged(CHANGE_LAYOUT);
+        }
     }
 
     @Override
@@ -95,7 +152,10 @@ class BubbleImpl implements BubbleStyle {
 
     @Override
     public void setArrowHeight(float arrowHeight) {
-        mArrowHeight = arrowHeight;
+        if (mArrowHeight != arrowHeight) {
+            mArrowHeight = arrowHeight;
+            markChanged(CHANGE_LAYOUT);
+        }
     }
 
     @Override
@@ -105,7 +165,10 @@ class BubbleImpl implements BubbleStyle {
 
     @Override
     public void setArrowWidth(float arrowWidth) {
-        mArrowWidth = arrowWidth;
+        if (mArrowWidth != arrowWidth) {
+            mArrowWidth = arrowWidth;
+            markChanged(CHANGE_GEOMETRY);
+        }
     }
 
     @Override
@@ -114,12 +177,18 @@ class BubbleImpl implements BubbleStyle {
     }
 
     public void setArrowPosPolicy(ArrowPosPolicy policy) {
-        mArrowPosPolicy = policy;
+        if (mArrowPosPolicy != policy) {
+            mArrowPosPolicy = policy;
+            markChanged(CHANGE_ARROW_PEAK);
+        }
     }
 
     @Override
     public void setArrowPosDelta(float delta) {
-        mArrowPosDelta = delta;
+        if (mArrowPosDelta != delta) {
+            mArrowPosDelta = delta;
+            markChanged(CHANGE_ARROW_PEAK);
+        }
     }
 
     public ArrowPosPolicy getArrowPosPolicy() {
@@ -139,13 +208,18 @@ class BubbleImpl implements BubbleStyle {
     @Override
     public void setArrowTo(int targetViewId) {
         mArrowToViewId = targetViewId;
-        setArrowToRef(null); // 先不设置，在updateDrawable会重新寻找
+        setArrowToRef(null); // 先不设置，将在绘制前（或updateDrawable中）重新寻找
+        markChanged(CHANGE_ARROW_PEAK);
     }
 
     @Override
     public void setArrowTo(View targetView) {
+        if (targetView != null && targetView == getArrowTo()) {
+            return;
+        }
         mArrowToViewId = targetView != null ? targetView.getId() : 0;
         setArrowToRef(targetView);
+        markChanged(CHANGE_ARROW_PEAK);
     }
 
     public View getArrowTo() {
@@ -159,7 +233,10 @@ class BubbleImpl implements BubbleStyle {
      */
     @Override
     public void setFillColor(int fillColor) {
-        mFillColor = fillColor;
+        if (mFillColor != fillColor) {
+            mFillColor = fillColor;
+            markChanged(CHANGE_REPAINT);
+        }
     }
 
     @Override
@@ -174,7 +251,10 @@ class BubbleImpl implements BubbleStyle {
      */
     @Override
     public void setBorderColor(int borderColor) {
-        mBorderColor = borderColor;
+        if (mBorderColor != borderColor) {
+            mBorderColor = borderColor;
+            markChanged(CHANGE_REPAINT);
+        }
     }
 
     @Override
@@ -189,7 +269,10 @@ class BubbleImpl implements BubbleStyle {
      */
     @Override
     public void setBorderWidth(float borderWidth) {
-        mBorderWidth = borderWidth;
+        if (mBorderWidth != borderWidth) {
+            mBorderWidth = borderWidth;
+            markChanged(CHANGE_GEOMETRY);
+        }
     }
 
     @Override
@@ -204,7 +287,10 @@ class BubbleImpl implements BubbleStyle {
      */
     @Override
     public void setFillPadding(float fillPadding) {
-        mFillPadding = fillPadding;
+        if (mFillPadding != fillPadding) {
+            mFillPadding = fillPadding;
+            markChanged(CHANGE_GEOMETRY);
+        }
     }
 
     @Override
@@ -223,10 +309,16 @@ class BubbleImpl implements BubbleStyle {
      */
     @Override
     public void setCornerRadius(float topLeft, float topRight, float bottomRight, float bottomLeft) {
-        mCornerTopLeftRadius = topLeft;
-        mCornerTopRightRadius = topRight;
-        mCornerBottomRightRadius = bottomRight;
-        mCornerBottomLeftRadius = bottomLeft;
+        if (mCornerTopLeftRadius != topLeft
+                || mCornerTopRightRadius != topRight
+                || mCornerBottomRightRadius != bottomRight
+                || mCornerBottomLeftRadius != bottomLeft) {
+            mCornerTopLeftRadius = topLeft;
+            mCornerTopRightRadius = topRight;
+            mCornerBottomRightRadius = bottomRight;
+            mCornerBottomLeftRadius = bottomLeft;
+            markChanged(CHANGE_GEOMETRY);
+        }
     }
 
     @Override
@@ -254,9 +346,30 @@ class BubbleImpl implements BubbleStyle {
         return mCornerBottomRightRadius;
     }
 
-    @SuppressWarnings("SuspiciousNameCombination")
     @Override
-    public void setPadding(final int left, final int top, final int right, final int bottom) {
+    public void setRenderMode(RenderMode renderMode) {
+        if (mRenderMode != renderMode) {
+            mRenderMode = renderMode;
+            markChanged(CHANGE_GEOMETRY);
+        }
+    }
+
+    @Override
+    public RenderMode getRenderMode() {
+        return mRenderMode;
+    }
+
+    @Override
+    public void setPadding(int left, int top, int right, int bottom) {
+        setPadding(left, top, right, bottom, false);
+    }
+
+    /**
+     * @param deferred 是否推迟到下一次消息循环设置；在 onLayout 或绘制前修正时须推迟，
+     *                 否则 layout 结束时会清除重新布局的标记，新的Padding直到下次布局才生效
+     */
+    @SuppressWarnings("SuspiciousNameCombination")
+    private void setPadding(int left, int top, int right, int bottom, boolean deferred) {
         if (mHolderCallback == null) {
             return;
         }
@@ -293,25 +406,82 @@ class BubbleImpl implements BubbleStyle {
                 break;
         }
 
+        final Rect shadowInsets = mBubbleDrawable.getShadowInsets();
+        mPaddingLeftOffset += shadowInsets.left;
+        mPaddingTopOffset += shadowInsets.top;
+        mPaddingRightOffset += shadowInsets.right;
+        mPaddingBottomOffset += shadowInsets.bottom;
+
         final int superPaddingLeft = left + mPaddingLeftOffset;
         final int superPaddingTop = top + mPaddingTopOffset;
         final int superPaddingRight = right + mPaddingRightOffset;
         final int superPaddingBottom = bottom + mPaddingBottomOffset;
 
-        if (superPaddingLeft != mHolderCallback.getSuperPaddingLeft()
-                || superPaddingTop != mHolderCallback.getSuperPaddingTop()
-                || superPaddingRight != mHolderCallback.getSuperPaddingRight()
-                || superPaddingBottom != mHolderCallback.getSuperPaddingBottom()) {
-            mParentView.post(new Runnable() {
-                @Override
-                public void run() {
-                    mHolderCallback.setSuperPadding(superPaddingLeft, superPaddingTop, superPaddingRight,
-                            superPaddingBottom);
-                }
-            });
+        mSuperPadding.set(superPaddingLeft, superPaddingTop, superPaddingRight, superPaddingBottom);
+        if (deferred) {
+            if (!mPaddingScheduled && !isSuperPaddingApplied()) {
+                mPaddingScheduled = true;
+                mParentView.post(mPaddingRunnable);
+            }
+        } else {
+            // 测量前直接设置，本次测量与布局即包含箭头所占空间
+            applySuperPadding();
+        }
+    }
+
+    private boolean isSuperPaddingApplied() {
+        return mSuperPadding.left == mHolderCallback.getSuperPaddingLeft()
+                && mSuperPadding.top == mHolderCallback.getSuperPaddingTop()
+                && mSuperPadding.right == mHolderCallback.getSuperPaddingRight()
+                && mSuperPadding.bottom == mHolderCallback.getSuperPaddingBottom();
+    }
+
+    private void applySuperPadding() {
+        if (mPaddingScheduled) {
+            mPaddingScheduled = false;
+            mParentView.removeCallbacks(mPaddingRunnable);
+        }
+        if (!isSuperPaddingApplied()) {
+            final long startNanos = BubbleMetrics.start();
+            mHolderCallback.setSuperPadding(mSuperPadding.left, mSuperPadding.top, mSuperPadding.right,
+                    mSuperPadding.bottom);
+            mMetrics.end(BubbleMetrics.PADDING_UPDATE, startNanos);
         }
     }
 
+    /**
+     * 在测量前确定箭头朝向，并设置对应的Padding，使首次测量与布局即包含箭头所占空间
+     * 自动朝向依赖自身与目标的位置，只能基于上一次布局的结果推导，布局后如有变化将在 updateDrawable 中推迟修正
+     */
+    void onMeasure() {
+        if (mArrowDirection != ArrowDirection.Auto) {
+            mDrawableArrowDirection = mArrowDirection;
+        } else if (mParentView.getWidth() > 0 && mParentView.getHeight() > 0) {
+            updateArrowTo(mParentView.getWidth(), mParentView.getHeight());
+        }
+
+        setPadding(mParentView.getPaddingLeft(), mParentView.getPaddingTop(), mParentView.getPaddingRight(),
+                mParentView.getPaddingBottom());
+    }
+
+    /**
+     * 供View实现 hasOverlappingRendering
+     * 内容直接绘制在气泡填充之上，淡入淡出时逐个绘制指令应用透明度即可，无需离屏缓冲；
+     * 但背景自身有重叠，或布局中有多个子View可能相互重叠时，仍需整体淡化
+     */
+    boolean hasOverlappingRendering() {
+        if (mBubbleDrawable.hasOverlappingRendering()) {
+            return true;
+        }
+
+        if (mParentView instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) mParentView;
+            final int childCount = group.getChildCount();
+            return childCount > 1 || (childCount == 1 && group.getChildAt(0).hasOverlappingRendering());
+        }
+        return false;
+    }
+
     @Override
     public int getPaddingLeft() {
         return mHolderCallback.getSuperPaddingLeft() - mPaddingLeftOffset;
@@ -332,62 +502,123 @@ class BubbleImpl implements BubbleStyle {
         return mHolderCallback.getSuperPaddingBottom() - mPaddingBottomOffset;
     }
 
+    // 推迟设置的Padding，执行时取最新的值
+    private final Rect mSuperPadding = new Rect();
+    private boolean mPaddingScheduled = false;
+    private final Runnable mPaddingRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mPaddingScheduled = false;
+            applySuperPadding();
+        }
+    };
+
     // 方便计算用的中间值对象，避免重复创建
     private int[] mLocation = new int[2];
     private Rect mRectTo = new Rect();
     private Rect mRectSelf = new Rect();
 
     void updateDrawable(int width, int height, boolean drawImmediately) {
-        int arrowToOffsetX = 0;
-        int arrowToOffsetY = 0;
+        final boolean traced = BubbleTrace.begin(BubbleTrace.UPDATE_DRAWABLE);
+        final long startNanos = BubbleMetrics.start();
+        mPendingChanges = 0;
+        updateArrowTo(width, height);
+        setPadding(mParentView.getPaddingLeft(), mParentView.getPaddingTop(), mParentView.getPaddingRight(),
+                mParentView.getPaddingBottom(), true);
+
+        if (drawImmediately) {
+            updateDrawableShapes(width, height);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                mParentView.setBackground(mBubbleDrawable);
+            } else {
+                // noinspection deprecation
+                mParentView.setBackgroundDrawable(mBubbleDrawable);
+            }
+        }
+        mMetrics.end(BubbleMetrics.UPDATE_DRAWABLE, startNanos);
+        BubbleTrace.end(traced);
+    }
+
+    /**
+     * 查找箭头指向的目标，计算其相对自身中心的偏移，并推导实际的箭头朝向
+     */
+    private void updateArrowTo(int width, int height) {
+        mArrowToOffsetX = 0;
+        mArrowToOffsetY = 0;
 
         View arrowToView = getArrowTo();
 
-        if (arrowToView == null && mArrowToViewId != 0) {
+        // 已添加到窗口时，按ID查找推迟到绘制前由跟踪器通过索引完成
+        if (arrowToView == null && mArrowToViewId != 0 && mTracker == null) {
             arrowToView = findGlobalViewById(mArrowToViewId);
             setArrowToRef(arrowToView);
         }
 
         mDrawableArrowDirection = mArrowDirection;
         if (arrowToView != null) {
-            arrowToView.getLocationOnScreen(mLocation);
+            getLocationOnScreen(arrowToView, mLocation);
             mRectTo.set(mLocation[0], mLocation[1], mLocation[0] + arrowToView.getWidth(),
                     mLocation[1] + arrowToView.getHeight());
 
-            mParentView.getLocationOnScreen(mLocation);
+            getLocationOnScreen(mParentView, mLocation);
             mRectSelf.set(mLocation[0], mLocation[1], mLocation[0] + width, mLocation[1] + height);
 
-            if (mDrawableArrowDirection == ArrowDirection.Auto) {
-                mDrawableArrowDirection = getAutoArrowDirection(mRectSelf, mRectTo);
-            }
+            resolveArrowTo(mRectSelf, mRectTo);
+        }
+    }
 
-            arrowToOffsetX = mRectTo.centerX() - mRectSelf.centerX();
-            arrowToOffsetY = mRectTo.centerY() - mRectSelf.centerY();
+    /**
+     * 根据自身与目标的屏幕区域推导实际的箭头朝向与目标偏移
+     */
+    private void resolveArrowTo(Rect self, Rect to) {
+        mDrawableArrowDirection = mArrowDirection;
+        if (mDrawableArrowDirection == ArrowDirection.Auto) {
+            mDrawableArrowDirection = getAutoArrowDirection(self, to);
         }
-        setPadding(mParentView.getPaddingLeft(), mParentView.getPaddingTop(), mParentView.getPaddingRight(),
-                mParentView.getPaddingBottom());
 
-        if (drawImmediately) {
-            mBubbleDrawable.resetRect(width, height);
-            mBubbleDrawable.setCornerRadius(mCornerTopLeftRadius, mCornerTopRightRadius, mCornerBottomRightRadius,
-                    mCornerBottomLeftRadius);
-            mBubbleDrawable.setFillColor(mFillColor);
-            mBubbleDrawable.setBorderWidth(mBorderWidth);
-            mBubbleDrawable.setFillPadding(mFillPadding);
-            mBubbleDrawable.setBorderColor(mBorderColor);
-            mBubbleDrawable.setArrowDirection(mDrawableArrowDirection);
-            mBubbleDrawable.setArrowPosPolicy(mArrowPosPolicy);
-            mBubbleDrawable.setArrowTo(arrowToOffsetX, arrowToOffsetY);
-            mBubbleDrawable.setArrowPosDelta(mArrowPosDelta);
-            mBubbleDrawable.setArrowHeight(mArrowHeight);
-            mBubbleDrawable.setArrowWidth(mArrowWidth);
-            mBubbleDrawable.updateShapes();
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
-                mParentView.setBackground(mBubbleDrawable);
-            } else {
-                // noinspection deprecation
-                mParentView.setBackgroundDrawable(mBubbleDrawable);
-            }
+        mArrowToOffsetX = to.centerX() - self.centerX();
+        mArrowToOffsetY = to.centerY() - self.centerY();
+    }
+
+    /**
+     * 查询屏幕位置，已添加到窗口时通过跟踪器查询，同一帧内复用结果
+     */
+    private void getLocationOnScreen(View view, int[] outLocation) {
+        if (mTracker != null) {
+            mTracker.getLocationOnScreen(view, outLocation, mMetrics);
+        } else {
+            final boolean traced = BubbleTrace.begin(BubbleTrace.LOCATION_LOOKUP);
+            final long startNanos = BubbleMetrics.start();
+            view.getLocationOnScreen(outLocation);
+            mMetrics.end(BubbleMetrics.LOCATION_LOOKUP, startNanos);
+            BubbleTrace.end(traced);
+        }
+    }
+
+    /**
+     * 将当前属性同步到气泡背景，由 BubbleDrawable 判断是否需要重建路径
+     */
+    private void updateDrawableShapes(int width, int height) {
+        mBubbleDrawable.resetRect(width, height);
+        mBubbleDrawable.setCornerRadius(mCornerTopLeftRadius, mCornerTopRightRadius, mCornerBottomRightRadius,
+                mCornerBottomLeftRadius);
+        mBubbleDrawable.setFillColor(mFillColor);
+        mBubbleDrawable.setBorderWidth(mBorderWidth);
+        mBubbleDrawable.setFillPadding(mFillPadding);
+        mBubbleDrawable.setBorderColor(mBorderColor);
+        mBubbleDrawable.setArrowDirection(mDrawableArrowDirection);
+        mBubbleDrawable.setArrowPosPolicy(mArrowPosPolicy);
+        mBubbleDrawable.setArrowTo(mArrowToOffsetX, mArrowToOffsetY);
+        mBubbleDrawable.setArrowPosDelta(mArrowPosDelta);
+        mBubbleDrawable.setArrowHeight(mArrowHeight);
+        mBubbleDrawable.setArrowWidth(mArrowWidth);
+        mBubbleDrawable.setRenderMode(mRenderMode);
+        if (mShapeAnimator != null && mShapeAnimator.isRunning()) {
+            mShapeAnimator.applyFrame();
+        }
+        mBubbleDrawable.updateShapes();
+        if (mBubbleDrawable.consumeOutlineDirty() && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            mParentView.invalidateOutline();
         }
     }
 
@@ -396,35 +627,520 @@ class BubbleImpl implements BubbleStyle {
         updateDrawable(mParentView.getWidth(), mParentView.getHeight(), true);
     }
 
+    @Override
+    public Editor edit() {
+        return new BubbleEditor();
+    }
+
+    @Override
+    public ShapeAnimator animate() {
+        if (mShapeAnimator == null) {
+            mShapeAnimator = new BubbleShapeAnimator();
+        }
+        mShapeAnimator.begin();
+        return mShapeAnimator;
+    }
+
+    @Override
+    public BubbleMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * 记录属性修改，并在下一帧合并处理
+     */
+    private void markChanged(int change) {
+        mPendingChanges |= change;
+        if (mParentView != null && !mApplyScheduled) {
+            mApplyScheduled = true;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                mParentView.postOnAnimation(mApplyRunnable);
+            } else {
+                mParentView.post(mApplyRunnable);
+            }
+        }
+    }
+
+    /**
+     * 根据累积的修改只做必要的更新
+     * 朝向或箭头高度变化影响Padding，需完整刷新并重新布局；箭头位置变化需重新计算目标偏移；
+     * 形状变化只需重建路径；颜色变化只需重绘
+     */
+    private void applyPendingChanges() {
+        final int changes = mPendingChanges;
+        mPendingChanges = 0;
+        if (changes == 0) {
+            return;
+        }
+
+        final int width = mParentView.getWidth();
+        final int height = mParentView.getHeight();
+        if ((changes & CHANGE_LAYOUT) != 0) {
+            updateDrawable(width, height, true);
+        } else if ((changes & CHANGE_ARROW_PEAK) != 0) {
+            ArrowDirection oldDirection = mDrawableArrowDirection;
+            updateArrowTo(width, height);
+            if (mDrawableArrowDirection != oldDirection) {
+                setPadding(mParentView.getPaddingLeft(), mParentView.getPaddingTop(), mParentView.getPaddingRight(),
+                        mParentView.getPaddingBottom(), true);
+            }
+            updateDrawableShapes(width, height);
+        } else {
+            updateDrawableShapes(width, height);
+        }
+    }
+
     private View findGlobalViewById(int viewId) {
         if (viewId == 0) {
             return null;
         }
 
+        final boolean traced = BubbleTrace.begin(BubbleTrace.FIND_VIEW);
+        final long startNanos = BubbleMetrics.start();
+        View arrowToView = null;
         View vp = mParentView;
-        while (vp.getParent() instanceof View) {
+        while (arrowToView == null && vp.getParent() instanceof View) {
             // 逐层在父View中查找，是为了查找离自己最近的目标对象，因为ID可能重复
             vp = (View) vp.getParent();
-            View arrowToView = vp.findViewById(viewId);
-            if (arrowToView != null) {
-                return arrowToView;
-            }
+            arrowToView = vp.findViewById(viewId);
         }
+        mMetrics.end(BubbleMetrics.FIND_VIEW, startNanos);
+        BubbleTrace.end(traced);
 
-        return null;
+        return arrowToView;
     }
 
     private void setArrowToRef(View targetView) {
-        if (mArrowToViewRef != null) {
-            View oldTargetView = mArrowToViewRef.get();
-            if (oldTargetView != null) {
-                oldTargetView.removeOnLayoutChangeListener(mOnLayoutChangeListener);
+        mArrowToViewRef = targetView != null ? new WeakReference<>(targetView) : null;
+        updateTracking();
+    }
+
+    /**
+     * 有箭头目标（或目标ID）且已添加到窗口时，登记到跟踪器
+     */
+    private void updateTracking() {
+        if (mParentView == null) {
+            return;
+        }
+
+        final View arrowToView = getArrowTo();
+        final BubbleAnchorTracker tracker = arrowToView != null || mArrowToViewId != 0
+                ? BubbleAnchorTracker.of(mParentView) : null;
+        final BubbleAnchorTracker anchorTracker = tracker != null && arrowToView != null
+                && arrowToView.getRootView() != mParentView.getRootView() ? BubbleAnchorTracker.of(arrowToView) : null;
+
+        if (mTracker != tracker) {
+            if (mTracker != null) {
+                mTracker.unregister(mAnchorClient);
+            }
+            mTracker = tracker;
+            if (tracker != null) {
+                tracker.register(mAnchorClient);
             }
         }
 
-        mArrowToViewRef = targetView != null ? new WeakReference<>(targetView) : null;
-        if (targetView != null) {
-            targetView.addOnLayoutChangeListener(mOnLayoutChangeListener);
+        if (mAnchorTracker != anchorTracker) {
+            if (mAnchorTracker != null) {
+                mAnchorTracker.unregister(mAnchorClient);
+            }
+            mAnchorTracker = anchorTracker;
+            if (anchorTracker != null) {
+                anchorTracker.register(mAnchorClient);
+            }
+        }
+    }
+
+    private void stopTracking() {
+        if (mTracker != null) {
+            mTracker.unregister(mAnchorClient);
+            mTracker = null;
+        }
+        if (mAnchorTracker != null) {
+            mAnchorTracker.unregister(mAnchorClient);
+            mAnchorTracker = null;
+        }
+    }
+
+    private class AnchorClient implements BubbleAnchorTracker.Client {
+        @Override
+        public View getTrackedView() {
+            return mParentView;
+        }
+
+        @Override
+        public View getAnchorView() {
+            View arrowToView = getArrowTo();
+            if (arrowToView == null && mArrowToViewId != 0 && mTracker != null) {
+                arrowToView = mTracker.findViewById(mParentView, mArrowToViewId, mMetrics);
+                if (arrowToView != null) {
+                    setArrowToRef(arrowToView);
+                }
+            }
+            return arrowToView;
+        }
+
+        @Override
+        public void onAnchorMoved(Rect selfRect, Rect anchorRect) {
+            final ArrowDirection oldDirection = mDrawableArrowDirection;
+            resolveArrowTo(selfRect, anchorRect);
+            if (mDrawableArrowDirection != oldDirection) {
+                setPadding(mParentView.getPaddingLeft(), mParentView.getPaddingTop(), mParentView.getPaddingRight(),
+                        mParentView.getPaddingBottom(), true);
+            }
+            updateDrawableShapes(selfRect.width(), selfRect.height());
+        }
+
+        @Override
+        public BubbleMetrics getMetrics() {
+            return mMetrics;
+        }
+    }
+
+    /**
+     * 修改先记录在编辑器中，apply 时一并交给各属性的设置方法，在下一帧合并为一次刷新
+     */
+    private class BubbleEditor implements Editor {
+        private static final int SET_ARROW_DIRECTION = 1;
+        private static final int SET_ARROW_HEIGHT = 1 << 1;
+        private static final int SET_ARROW_WIDTH = 1 << 2;
+        private static final int SET_ARROW_POS_POLICY = 1 << 3;
+        private static final int SET_ARROW_POS_DELTA = 1 << 4;
+        private static final int SET_ARROW_TO_ID = 1 << 5;
+        private static final int SET_ARROW_TO_VIEW = 1 << 6;
+        private static final int SET_FILL_COLOR = 1 << 7;
+        private static final int SET_BORDER_COLOR = 1 << 8;
+        private static final int SET_BORDER_WIDTH = 1 << 9;
+        private static final int SET_FILL_PADDING = 1 << 10;
+        private static final int SET_CORNER_RADIUS = 1 << 11;
+        private static final int SET_RENDER_MODE = 1 << 12;
+
+        private int mSet = 0;
+        private ArrowDirection mArrowDirection;
+        private float mArrowHeight, mArrowWidth, mArrowPosDelta;
+        private ArrowPosPolicy mArrowPosPolicy;
+        private int mArrowToViewId;
+        private View mArrowToView;
+        private int mFillColor, mBorderColor;
+        private float mBorderWidth, mFillPadding;
+        private float mTopLeftRadius, mTopRightRadius, mBottomRightRadius, mBottomLeftRadius;
+        private RenderMode mRenderMode;
+
+        @Override
+        public Editor setArrowDirection(ArrowDirection arrowDirection) {
+            mArrowDirection = arrowDirection;
+            mSet |= SET_ARROW_DIRECTION;
+            return this;
+        }
+
+        @Override
+        public Editor setArrowHeight(float arrowHeight) {
+            mArrowHeight = arrowHeight;
+            mSet |= SET_ARROW_HEIGHT;
+            return this;
+        }
+
+        @Override
+        public Editor setArrowWidth(float arrowWidth) {
+            mArrowWidth = arrowWidth;
+            mSet |= SET_ARROW_WIDTH;
+            return this;
+        }
+
+        @Override
+        public Editor setArrowPosPolicy(ArrowPosPolicy policy) {
+            mArrowPosPolicy = policy;
+            mSet |= SET_ARROW_POS_POLICY;
+            return this;
+        }
+
+        @Override
+        public Editor setArrowPosDelta(float delta) {
+            mArrowPosDelta = delta;
+            mSet |= SET_ARROW_POS_DELTA;
+            return this;
+        }
+
+        @Override
+        public Editor setArrowTo(int viewId) {
+            // 按ID与按View指定目标，以后设置的为准
+            mArrowToViewId = viewId;
+            mArrowToView = null;
+            mSet = (mSet & ~SET_ARROW_TO_VIEW) | SET_ARROW_TO_ID;
+            return this;
+        }
+
+        @Override
+        public Editor setArrowTo(View view) {
+            mArrowToView = view;
+            mSet = (mSet & ~SET_ARROW_TO_ID) | SET_ARROW_TO_VIEW;
+            return this;
+        }
+
+        @Override
+        public Editor setFillColor(int fillColor) {
+            mFillColor = fillColor;
+            mSet |= SET_FILL_COLOR;
+            return this;
+        }
+
+        @Override
+        public Editor setBorderColor(int borderColor) {
+            mBorderColor = borderColor;
+            mSet |= SET_BORDER_COLOR;
+            return this;
+        }
+
+        @Override
+        public Editor setBorderWidth(float borderWidth) {
+            mBorderWidth = borderWidth;
+            mSet |= SET_BORDER_WIDTH;
+            return this;
+        }
+
+        @Override
+        public Editor setFillPadding(float fillPadding) {
+            mFillPadding = fillPadding;
+            mSet |= SET_FILL_PADDING;
+            return this;
+        }
+
+        @Override
+        public Editor setCornerRadius(float topLeft, float topRight, float bottomRight, float bottomLeft) {
+            mTopLeftRadius = topLeft;
+            mTopRightRadius = topRight;
+            mBottomRightRadius = bottomRight;
+            mBottomLeftRadius = bottomLeft;
+            mSet |= SET_CORNER_RADIUS;
+            return this;
+        }
+
+        @Override
+        public Editor setCornerRadius(float radius) {
+            return setCornerRadius(radius, radius, radius, radius);
+        }
+
+        @Override
+        public Editor setRenderMode(RenderMode renderMode) {
+            mRenderMode = renderMode;
+            mSet |= SET_RENDER_MODE;
+            return this;
+        }
+
+        @Override
+        public void apply() {
+            final int set = mSet;
+            mSet = 0;
+            if ((set & SET_ARROW_DIRECTION) != 0) {
+                BubbleImpl.this.setArrowDirection(mArrowDirection);
+            }
+            if ((set & SET_ARROW_HEIGHT) != 0) {
+                BubbleImpl.this.setArrowHeight(mArrowHeight);
+            }
+            if ((set & SET_ARROW_WIDTH) != 0) {
+                BubbleImpl.this.setArrowWidth(mArrowWidth);
+            }
+            if ((set & SET_ARROW_POS_POLICY) != 0) {
+                BubbleImpl.this.setArrowPosPolicy(mArrowPosPolicy);
+            }
+            if ((set & SET_ARROW_POS_DELTA) != 0) {
+                BubbleImpl.this.setArrowPosDelta(mArrowPosDelta);
+            }
+            if ((set & SET_ARROW_TO_ID) != 0) {
+                BubbleImpl.this.setArrowTo(mArrowToViewId);
+            }
+            if ((set & SET_ARROW_TO_VIEW) != 0) {
+                BubbleImpl.this.setArrowTo(mArrowToView);
+                mArrowToView = null; // 不在编辑器中持有目标
+            }
+            if ((set & SET_FILL_COLOR) != 0) {
+                BubbleImpl.this.setFillColor(mFillColor);
+            }
+            if ((set & SET_BORDER_COLOR) != 0) {
+                BubbleImpl.this.setBorderColor(mBorderColor);
+            }
+            if ((set & SET_BORDER_WIDTH) != 0) {
+                BubbleImpl.this.setBorderWidth(mBorderWidth);
+            }
+            if ((set & SET_FILL_PADDING) != 0) {
+                BubbleImpl.this.setFillPadding(mFillPadding);
+            }
+            if ((set & SET_CORNER_RADIUS) != 0) {
+                BubbleImpl.this.setCornerRadius(mTopLeftRadius, mTopRightRadius, mBottomRightRadius,
+                        mBottomLeftRadius);
+            }
+            if ((set & SET_RENDER_MODE) != 0) {
+                BubbleImpl.this.setRenderMode(mRenderMode);
+            }
+        }
+    }
+
+    /**
+     * 形状过渡动画
+     * 目标值直接写入气泡属性，按原有流程（下一帧合并刷新）解析目标位置；
+     * 每帧在同步属性到背景时，以起点与最新目标值插值覆盖可动画的部分，因此过渡中目标移动也能平滑跟随
+     */
+    private class BubbleShapeAnimator extends AnimatorListenerAdapter
+            implements ShapeAnimator, ValueAnimator.AnimatorUpdateListener {
+        private static final long DEFAULT_DURATION = 250;
+
+        // 可动画的形状参数在数组中的位置
+        private static final int ARROW_TO_X = 0;
+        private static final int ARROW_TO_Y = 1;
+        private static final int ARROW_WIDTH = 2;
+        private static final int ARROW_POS_DELTA = 3;
+        private static final int TOP_LEFT_RADIUS = 4;
+        private static final int TOP_RIGHT_RADIUS = 5;
+        private static final int BOTTOM_RIGHT_RADIUS = 6;
+        private static final int BOTTOM_LEFT_RADIUS = 7;
+        private static final int VALUE_COUNT = 8;
+
+        private final float[] mFrom = new float[VALUE_COUNT];
+        private final float[] mTo = new float[VALUE_COUNT];
+        private final float[] mCurrent = new float[VALUE_COUNT];
+        private ValueAnimator mAnimator = null;
+        private long mDuration = DEFAULT_DURATION;
+        private TimeInterpolator mInterpolator = null;
+        private float mFraction = 0;
+        private boolean mRunning = false;
+
+        boolean isRunning() {
+            return mRunning;
+        }
+
+        /**
+         * 以当前显示的形状作为起点，正在过渡时从当前帧继续
+         */
+        void begin() {
+            if (mRunning) {
+                System.arraycopy(mCurrent, 0, mFrom, 0, VALUE_COUNT);
+                mRunning = false;
+                mAnimator.cancel();
+                mBubbleDrawable.setAnimating(false);
+            } else {
+                readValues(mFrom);
+            }
+        }
+
+        private void readValues(float[] out) {
+            out[ARROW_TO_X] = mArrowToOffsetX;
+            out[ARROW_TO_Y] = mArrowToOffsetY;
+            out[ARROW_WIDTH] = mArrowWidth;
+            out[ARROW_POS_DELTA] = mArrowPosDelta;
+            out[TOP_LEFT_RADIUS] = mCornerTopLeftRadius;
+            out[TOP_RIGHT_RADIUS] = mCornerTopRightRadius;
+            out[BOTTOM_RIGHT_RADIUS] = mCornerBottomRightRadius;
+            out[BOTTOM_LEFT_RADIUS] = mCornerBottomLeftRadius;
+        }
+
+        /**
+         * 按当前进度插值，并写入气泡背景
+         */
+        void applyFrame() {
+            readValues(mTo);
+            for (int i = 0; i < VALUE_COUNT; i++) {
+                mCurrent[i] = mFrom[i] + (mTo[i] - mFrom[i]) * mFraction;
+            }
+            mBubbleDrawable.setArrowTo(mCurrent[ARROW_TO_X], mCurrent[ARROW_TO_Y]);
+            mBubbleDrawable.setArrowWidth(mCurrent[ARROW_WIDTH]);
+            mBubbleDrawable.setArrowPosDelta(mCurrent[ARROW_POS_DELTA]);
+            mBubbleDrawable.setCornerRadius(mCurrent[TOP_LEFT_RADIUS], mCurrent[TOP_RIGHT_RADIUS],
+                    mCurrent[BOTTOM_RIGHT_RADIUS], mCurrent[BOTTOM_LEFT_RADIUS]);
+        }
+
+        @Override
+        public ShapeAnimator setArrowTo(int viewId) {
+            BubbleImpl.this.setArrowTo(viewId);
+            return this;
+        }
+
+        @Override
+        public ShapeAnimator setArrowTo(View view) {
+            BubbleImpl.this.setArrowTo(view);
+            return this;
+        }
+
+        @Override
+        public ShapeAnimator setArrowWidth(float arrowWidth) {
+            BubbleImpl.this.setArrowWidth(arrowWidth);
+            return this;
+        }
+
+        @Override
+        public ShapeAnimator setArrowPosDelta(float delta) {
+            BubbleImpl.this.setArrowPosDelta(delta);
+            return this;
+        }
+
+        @Override
+        public ShapeAnimator setCornerRadius(float topLeft, float topRight, float bottomRight, float bottomLeft) {
+            BubbleImpl.this.setCornerRadius(topLeft, topRight, bottomRight, bottomLeft);
+            return this;
+        }
+
+        @Override
+        public ShapeAnimator setCornerRadius(float radius) {
+            BubbleImpl.this.setCornerRadius(radius);
+            return this;
+        }
+
+        @Override
+        public ShapeAnimator setDuration(long duration) {
+            mDuration = duration;
+            return this;
+        }
+
+        @Override
+        public ShapeAnimator setInterpolator(TimeInterpolator interpolator) {
+            mInterpolator = interpolator;
+            return this;
+        }
+
+        @Override
+        public void start() {
+            if (mParentView.getWidth() == 0 || mParentView.getHeight() == 0) {
+                return;
+            }
+
+            if (mAnimator == null) {
+                mAnimator = ValueAnimator.ofFloat(0f, 1f);
+                mAnimator.addUpdateListener(this);
+                mAnimator.addListener(this);
+            }
+            mAnimator.setDuration(mDuration);
+            if (mInterpolator != null) {
+                mAnimator.setInterpolator(mInterpolator);
+            }
+            mFraction = 0;
+            mRunning = true;
+            mBubbleDrawable.setAnimating(true);
+            mAnimator.start();
+        }
+
+        @Override
+        public void cancel() {
+            if (mRunning) {
+                mAnimator.cancel();
+            }
+        }
+
+        @Override
+        public void onAnimationUpdate(ValueAnimator animation) {
+            if (!mRunning) {
+                return;
+            }
+            // 取插值后的进度而非 getAnimatedValue，避免每帧装箱
+            mFraction = animation.getAnimatedFraction();
+            updateDrawableShapes(mParentView.getWidth(), mParentView.getHeight());
+        }
+
+        @Override
+        public void onAnimationEnd(Animator animation) {
+            if (!mRunning) {
+                return; // 被新的过渡接替
+            }
+            mRunning = false;
+            mBubbleDrawable.setAnimating(false);
+            updateDrawableShapes(mParentView.getWidth(), mParentView.getHeight());
         }
     }
 
@@ -436,23 +1152,8 @@ class BubbleImpl implements BubbleStyle {
      * @return 推导出的箭头朝向
      */
     private static ArrowDirection getAutoArrowDirection(Rect bubble, Rect target) {
-        if (!bubble.intersects(target.left, target.top, target.right, target.bottom)) {
-            Point offset = new Point(bubble.centerX() - target.centerX(), bubble.centerY() - target.centerY());
-            if (Math.abs(offset.x) < bubble.width() / 2 + target.width() / 2) {
-                if (offset.y < 0) {
-                    return ArrowDirection.Down;
-                } else if (offset.y > 0) {
-                    return ArrowDirection.Up;
-                }
-            } else if (Math.abs(offset.y) < bubble.height() / 2 + target.height() / 2) {
-                if (offset.x < 0) {
-                    return ArrowDirection.Right;
-                } else if (offset.x > 0) {
-                    return ArrowDirection.Left;
-                }
-            }
-        }
-
-        return ArrowDirection.None;
+        return ArrowDirection.valueOf(BubblePlacement.getAutoArrowDirection(
+                bubble.left, bubble.top, bubble.right, bubble.bottom,
+                target.left, target.top, target.right, target.bottom));
     }
 }
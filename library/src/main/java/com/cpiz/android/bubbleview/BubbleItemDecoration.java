@@ -0,0 +1,262 @@
+package com.cpiz.android.bubbleview;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import com.cpiz.android.bubbleview.BubbleStyle.ArrowDirection;
+import com.cpiz.android.bubbleview.BubbleStyle.ArrowPosPolicy;
+import com.cpiz.android.bubbleview.BubbleStyle.RenderMode;
+
+/**
+ * 在 RecyclerView 中为普通的列表项绘制气泡背景，如聊天消息列表
+ * 列表项无需使用气泡View，整个列表共用一个气泡背景逐项绘制；尺寸与样式相同的列表项共用
+ * {@link BubbleGeometryCache} 中的路径，九宫格模式下同样式的列表项共用同一模板
+ * 列表项本身即气泡主体，箭头绘制在列表项外侧由 getItemOffsets 留出的空间中
+ * 需自行依赖 RecyclerView
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class BubbleItemDecoration extends RecyclerView.ItemDecoration {
+    /**
+     * 按位置提供气泡样式
+     */
+    public interface StyleProvider {
+        /**
+         * @param position 列表项在 Adapter 中的位置
+         * @param outStyle 样式，已重置为默认值，按需修改
+         * @return 是否为该列表项绘制气泡
+         */
+        boolean getBubbleStyle(int position, Style outStyle);
+    }
+
+    /**
+     * 列表项的气泡样式，取值与气泡View的同名属性一致
+     * 不指向目标，箭头位置策略为 TargetCenter 时按 SelfCenter 处理
+     */
+    public static final class Style {
+        ArrowDirection arrowDirection;
+        ArrowPosPolicy arrowPosPolicy;
+        float arrowHeight, arrowWidth, arrowPosDelta;
+        float topLeftRadius, topRightRadius, bottomRightRadius, bottomLeftRadius;
+        int fillColor, borderColor;
+        float borderWidth, fillPadding;
+        RenderMode renderMode;
+        boolean visible; // StyleProvider 的返回值
+
+        Style() {
+            reset();
+        }
+
+        void reset() {
+            arrowDirection = ArrowDirection.None;
+            arrowPosPolicy = ArrowPosPolicy.SelfCenter;
+            arrowHeight = Utils.dp2px(6);
+            arrowWidth = Utils.dp2px(10);
+            arrowPosDelta = 0;
+            topLeftRadius = topRightRadius = bottomRightRadius = bottomLeftRadius = Utils.dp2px(4);
+            fillColor = 0xCC000000;
+            borderColor = Color.WHITE;
+            borderWidth = 0;
+            fillPadding = 0;
+            renderMode = RenderMode.Path;
+        }
+
+        /**
+         * @param arrowDirection 箭头方向，仅 Up/Down/Left/Right 有效，其余视为无箭头
+         */
+        public Style setArrowDirection(ArrowDirection arrowDirection) {
+            this.arrowDirection = arrowDirection;
+            return this;
+        }
+
+        public Style setArrowPosPolicy(ArrowPosPolicy arrowPosPolicy) {
+            this.arrowPosPolicy = arrowPosPolicy;
+            return this;
+        }
+
+        public Style setArrowHeight(float arrowHeight) {
+            this.arrowHeight = arrowHeight;
+            return this;
+        }
+
+        public Style setArrowWidth(float arrowWidth) {
+            this.arrowWidth = arrowWidth;
+            return this;
+        }
+
+        public Style setArrowPosDelta(float arrowPosDelta) {
+            this.arrowPosDelta = arrowPosDelta;
+            return this;
+        }
+
+        public Style setCornerRadius(float radius) {
+            return setCornerRadius(radius, radius, radius, radius);
+        }
+
+        public Style setCornerRadius(float topLeft, float topRight, float bottomRight, float bottomLeft) {
+            topLeftRadius = topLeft;
+            topRightRadius = topRight;
+            bottomRightRadius = bottomRight;
+            bottomLeftRadius = bottomLeft;
+            return this;
+        }
+
+        public Style setFillColor(int fillColor) {
+            this.fillColor = fillColor;
+            return this;
+        }
+
+        public Style setBorderColor(int borderColor) {
+            this.borderColor = borderColor;
+            return this;
+        }
+
+        public Style setBorderWidth(float borderWidth) {
+            this.borderWidth = borderWidth;
+            return this;
+        }
+
+        public Style setFillPadding(float fillPadding) {
+            this.fillPadding = fillPadding;
+            return this;
+        }
+
+        public Style setRenderMode(RenderMode renderMode) {
+            this.renderMode = renderMode;
+            return this;
+        }
+
+        /**
+         * @return 实际绘制的箭头方向
+         */
+        ArrowDirection getDrawableArrowDirection() {
+            return arrowDirection != null
+                    && (arrowDirection.isLeft() || arrowDirection.isUp() || arrowDirection.isRight() || arrowDirection.isDown())
+                    ? arrowDirection : ArrowDirection.None;
+        }
+    }
+
+    private final StyleProvider mStyleProvider;
+    private final BubbleMetrics mMetrics = new BubbleMetrics();
+    private final BubbleDrawable mBubbleDrawable = new BubbleDrawable(mMetrics);
+
+    public BubbleItemDecoration(StyleProvider styleProvider) {
+        mStyleProvider = styleProvider;
+    }
+
+    /**
+     * @return 气泡背景的性能统计
+     */
+    public BubbleMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    @Override
+    public void getItemOffsets(Rect outRect, View view, RecyclerView parent, RecyclerView.State state) {
+        outRect.setEmpty();
+        final Style style = obtainStyle(parent, view);
+        if (style == null) {
+            return;
+        }
+
+        // 箭头一侧留出箭头高度
+        final int arrowHeight = (int) Math.ceil(style.arrowHeight);
+        switch (style.getDrawableArrowDirection()) {
+            case Left:
+                outRect.left = arrowHeight;
+                break;
+            case Up:
+                outRect.top = arrowHeight;
+                break;
+            case Right:
+                outRect.right = arrowHeight;
+                break;
+            case Down:
+                outRect.bottom = arrowHeight;
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void onDraw(Canvas canvas, RecyclerView parent, RecyclerView.State state) {
+        final int childCount = parent.getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            final View child = parent.getChildAt(i);
+            final Style style = child.getAlpha() > 0 ? obtainStyle(parent, child) : null;
+            if (style == null) {
+                continue;
+            }
+
+            final ArrowDirection direction = style.getDrawableArrowDirection();
+            final int arrowHeight = (int) Math.ceil(style.arrowHeight);
+            int left = child.getLeft(), top = child.getTop(), right = child.getRight(), bottom = child.getBottom();
+            switch (direction) {
+                case Left:
+                    left -= arrowHeight;
+                    break;
+                case Up:
+                    top -= arrowHeight;
+                    break;
+                case Right:
+                    right += arrowHeight;
+                    break;
+                case Down:
+                    bottom += arrowHeight;
+                    break;
+                default:
+                    break;
+            }
+
+            final BubbleDrawable drawable = mBubbleDrawable;
+            drawable.resetRect(right - left, bottom - top);
+            drawable.setCornerRadius(style.topLeftRadius, style.topRightRadius, style.bottomRightRadius,
+                    style.bottomLeftRadius);
+            drawable.setFillColor(style.fillColor);
+            drawable.setBorderWidth(style.borderWidth);
+            drawable.setFillPadding(style.fillPadding);
+            drawable.setBorderColor(style.borderColor);
+            drawable.setArrowDirection(direction);
+            drawable.setArrowPosPolicy(style.arrowPosPolicy == ArrowPosPolicy.TargetCenter
+                    ? ArrowPosPolicy.SelfCenter : style.arrowPosPolicy);
+            drawable.setArrowTo(0, 0);
+            drawable.setArrowPosDelta(style.arrowPosDelta);
+            drawable.setArrowHeight(style.arrowHeight);
+            drawable.setArrowWidth(style.arrowWidth);
+            drawable.setRenderMode(style.renderMode);
+            drawable.setAlpha((int) (child.getAlpha() * 0xFF));
+            drawable.updateShapes();
+
+            // 跟随列表项的平移，如增删动画
+            final int saveCount = canvas.save();
+            canvas.translate(left + child.getTranslationX(), top + child.getTranslationY());
+            drawable.draw(canvas);
+            canvas.restoreToCount(saveCount);
+        }
+    }
+
+    /**
+     * 取得列表项的样式，保存在列表项的Tag中
+     * 移除动画中的列表项已没有 Adapter 位置，沿用移除前的样式，使气泡随列表项淡出、移出
+     *
+     * @return 样式，不绘制气泡时为null
+     */
+    private Style obtainStyle(RecyclerView parent, View child) {
+        Style style = (Style) child.getTag(R.id.bubble_item_style);
+        final int position = parent.getChildAdapterPosition(child);
+        if (position != RecyclerView.NO_POSITION) {
+            if (style == null) {
+                style = new Style();
+                child.setTag(R.id.bubble_item_style, style);
+            }
+            style.reset();
+            style.visible = mStyleProvider.getBubbleStyle(position, style);
+        }
+        return style != null && style.visible ? style : null;
+    }
+}
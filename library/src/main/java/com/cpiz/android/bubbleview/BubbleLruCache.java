@@ -0,0 +1,112 @@
+package com.cpiz.android.bubbleview;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 带容量上限与命中统计的LRU缓存
+ * 与 android.util.LruCache 类似，但支持在低版本系统上调整容量
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+class BubbleLruCache<K, V> {
+    private final LinkedHashMap<K, V> mMap = new LinkedHashMap<>(16, 0.75f, true);
+    private int mMaxSize;
+    private int mSize = 0;
+    private int mHitCount = 0;
+    private int mMissCount = 0;
+    private int mEvictionCount = 0;
+
+    BubbleLruCache(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize < 0");
+        }
+        mMaxSize = maxSize;
+    }
+
+    synchronized V get(K key) {
+        V value = mMap.get(key);
+        if (value != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+        return value;
+    }
+
+    synchronized void put(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("key == null || value == null");
+        }
+
+        V previous = mMap.put(key, value);
+        mSize += sizeOf(key, value);
+        if (previous != null) {
+            mSize -= sizeOf(key, previous);
+            onEntryRemoved(key, previous);
+        }
+        trimToSize(mMaxSize);
+    }
+
+    synchronized void resize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize < 0");
+        }
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * 淘汰最久未使用的条目，直到总大小不超过指定值
+     *
+     * @param maxSize 目标大小
+     */
+    synchronized void trimToSize(int maxSize) {
+        Iterator<Map.Entry<K, V>> it = mMap.entrySet().iterator();
+        while (mSize > maxSize && it.hasNext()) {
+            Map.Entry<K, V> eldest = it.next();
+            it.remove();
+            mSize -= sizeOf(eldest.getKey(), eldest.getValue());
+            mEvictionCount++;
+            onEntryRemoved(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    synchronized void evictAll() {
+        trimToSize(-1);
+    }
+
+    /**
+     * 条目占用的大小，默认每个条目计为1
+     */
+    protected int sizeOf(K key, V value) {
+        return 1;
+    }
+
+    /**
+     * 条目被淘汰或替换时回调
+     */
+    protected void onEntryRemoved(K key, V value) {
+    }
+
+    synchronized int size() {
+        return mSize;
+    }
+
+    synchronized int maxSize() {
+        return mMaxSize;
+    }
+
+    synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    synchronized int missCount() {
+        return mMissCount;
+    }
+
+    synchronized int evictionCount() {
+        return mEvictionCount;
+    }
+}
@@ -0,0 +1,179 @@
+package com.cpiz.android.bubbleview;
+
+/**
+ * 气泡渲染性能统计
+ * 记录各类关键操作的次数与耗时（纳秒），可按单个气泡读取，也可读取进程内汇总
+ * 默认关闭，关闭时各统计点仅做一次 volatile 读取
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class BubbleMetrics {
+    /**
+     * 背景刷新，即 updateDrawable 调用
+     */
+    public static final int UPDATE_DRAWABLE = 0;
+    /**
+     * 路径实际重建
+     */
+    public static final int PATH_REBUILD = 1;
+    /**
+     * getLocationOnScreen 位置查询
+     */
+    public static final int LOCATION_LOOKUP = 2;
+    /**
+     * 因箭头朝向变化而更新Padding
+     */
+    public static final int PADDING_UPDATE = 3;
+    /**
+     * 按ID查找箭头目标
+     */
+    public static final int FIND_VIEW = 4;
+    /**
+     * 背景绘制
+     */
+    public static final int DRAW = 5;
+    /**
+     * 弹窗显示，即 BubblePopupWindow.showArrowTo 调用
+     */
+    public static final int POPUP_SHOW = 6;
+    /**
+     * 因形状未变化（如仅颜色变化）而跳过路径重建，只计次数，耗时为0
+     */
+    public static final int PATH_REBUILD_SKIPPED = 7;
+
+    static final int EVENT_COUNT = 8;
+
+    static final long NOT_STARTED = Long.MIN_VALUE;
+
+    /**
+     * 统计事件回调，在记录事件的线程（通常为主线程）中调用，请勿在回调中做耗时操作
+     */
+    public interface Listener {
+        /**
+         * @param metrics       事件所属气泡的统计对象
+         * @param event         事件类型，如 {@link #UPDATE_DRAWABLE}
+         * @param durationNanos 耗时，纳秒
+         */
+        void onEvent(BubbleMetrics metrics, int event, long durationNanos);
+    }
+
+    private static volatile boolean sEnabled = false;
+    private static volatile Listener sListener = null;
+    private static final BubbleMetrics sGlobal = new BubbleMetrics();
+
+    private final long[] mCounts = new long[EVENT_COUNT];
+    private final long[] mTotalNanos = new long[EVENT_COUNT];
+    private final long[] mMaxNanos = new long[EVENT_COUNT];
+
+    BubbleMetrics() {
+    }
+
+    /**
+     * 设置是否启用统计，默认关闭
+     *
+     * @param enabled 是否启用
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * 设置统计事件回调，可用于上报
+     *
+     * @param listener 回调，为null时取消
+     */
+    public static void setListener(Listener listener) {
+        sListener = listener;
+    }
+
+    /**
+     * @return 进程内所有气泡的汇总统计
+     */
+    public static BubbleMetrics global() {
+        return sGlobal;
+    }
+
+    public synchronized long getCount(int event) {
+        return mCounts[event];
+    }
+
+    public synchronized long getTotalNanos(int event) {
+        return mTotalNanos[event];
+    }
+
+    public synchronized long getMaxNanos(int event) {
+        return mMaxNanos[event];
+    }
+
+    public synchronized long getAverageNanos(int event) {
+        return mCounts[event] > 0 ? mTotalNanos[event] / mCounts[event] : 0;
+    }
+
+    /**
+     * 清零统计
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            mCounts[i] = 0;
+            mTotalNanos[i] = 0;
+            mMaxNanos[i] = 0;
+        }
+    }
+
+    /**
+     * 开始计时
+     *
+     * @return 开始时间，未启用统计时为 {@link #NOT_STARTED}
+     */
+    static long start() {
+        return sEnabled ? System.nanoTime() : NOT_STARTED;
+    }
+
+    /**
+     * 结束计时并记录事件
+     *
+     * @param event      事件类型
+     * @param startNanos {@link #start()} 的返回值
+     */
+    void end(int event, long startNanos) {
+        if (startNanos == NOT_STARTED) {
+            return;
+        }
+
+        record(event, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 记录无需计时的事件
+     *
+     * @param event 事件类型
+     */
+    void count(int event) {
+        if (sEnabled) {
+            record(event, 0);
+        }
+    }
+
+    private void record(int event, long duration) {
+        add(event, duration);
+        sGlobal.add(event, duration);
+
+        final Listener listener = sListener;
+        if (listener != null) {
+            listener.onEvent(this, event, duration);
+        }
+    }
+
+    private synchronized void add(int event, long duration) {
+        mCounts[event]++;
+        mTotalNanos[event] += duration;
+        if (duration > mMaxNanos[event]) {
+            mMaxNanos[event] = duration;
+        }
+    }
+}
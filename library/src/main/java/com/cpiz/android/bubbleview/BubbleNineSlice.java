@@ -0,0 +1,297 @@
+package com.cpiz.android.bubbleview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import com.cpiz.android.bubbleview.core.BubbleGeometry;
+import com.cpiz.android.bubbleview.core.BubbleShape;
+import com.cpiz.android.bubbleview.core.PathBuffer;
+
+/**
+ * 气泡的九宫格位图渲染
+ * 将四角与箭头按样式预先绘制到一张小位图（模板）中，绘制时把模板切片拉伸到目标尺寸，
+ * 尺寸变化只需重新计算切片位置，不必重建和填充路径
+ * 模板按样式在进程内共享缓存，样式完全相同的气泡共用同一张位图
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+final class BubbleNineSlice {
+    private static final int MAX_CACHE_BYTES = 1024 * 1024;
+
+    private static final BubbleLruCache<Key, Template> sCache = new BubbleLruCache<Key, Template>(MAX_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(Key key, Template value) {
+            return value.bitmap.getRowBytes() * value.bitmap.getHeight();
+        }
+    };
+
+    // 拉伸切片的宽度，位于直边上，沿拉伸方向上各像素相同
+    private static final int STRETCH = 1;
+
+    private BubbleNineSlice() {
+    }
+
+    /**
+     * 模板的样式参数，不包括尺寸和箭头位置
+     */
+    static final class Key {
+        float borderWidth;
+        float fillPadding;
+        float arrowHeight;
+        float arrowWidth;
+        float topLeftRadius;
+        float topRightRadius;
+        float bottomRightRadius;
+        float bottomLeftRadius;
+        int arrowDirection;
+        int fillColor;
+        int borderColor;
+
+        void set(Key other) {
+            borderWidth = other.borderWidth;
+            fillPadding = other.fillPadding;
+            arrowHeight = other.arrowHeight;
+            arrowWidth = other.arrowWidth;
+            topLeftRadius = other.topLeftRadius;
+            topRightRadius = other.topRightRadius;
+            bottomRightRadius = other.bottomRightRadius;
+            bottomLeftRadius = other.bottomLeftRadius;
+            arrowDirection = other.arrowDirection;
+            fillColor = other.fillColor;
+            borderColor = other.borderColor;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key key = (Key) o;
+            return Float.compare(key.borderWidth, borderWidth) == 0
+                    && Float.compare(key.fillPadding, fillPadding) == 0
+                    && Float.compare(key.arrowHeight, arrowHeight) == 0
+                    && Float.compare(key.arrowWidth, arrowWidth) == 0
+                    && Float.compare(key.topLeftRadius, topLeftRadius) == 0
+                    && Float.compare(key.topRightRadius, topRightRadius) == 0
+                    && Float.compare(key.bottomRightRadius, bottomRightRadius) == 0
+                    && Float.compare(key.bottomLeftRadius, bottomLeftRadius) == 0
+                    && key.arrowDirection == arrowDirection
+                    && key.fillColor == fillColor
+                    && key.borderColor == borderColor;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Float.floatToIntBits(borderWidth);
+            result = 31 * result + Float.floatToIntBits(fillPadding);
+            result = 31 * result + Float.floatToIntBits(arrowHeight);
+            result = 31 * result + Float.floatToIntBits(arrowWidth);
+            result = 31 * result + Float.floatToIntBits(topLeftRadius);
+            result = 31 * result + Float.floatToIntBits(topRightRadius);
+            result = 31 * result + Float.floatToIntBits(bottomRightRadius);
+            result = 31 * result + Float.floatToIntBits(bottomLeftRadius);
+            result = 31 * result + arrowDirection;
+            result = 31 * result + fillColor;
+            result = 31 * result + borderColor;
+            return result;
+        }
+    }
+
+    /**
+     * 模板位图及其切片边界
+     * 箭头所在边被切为 角、拉伸、箭头、拉伸、角 五段，另一方向为 角、拉伸、角 三段
+     */
+    static final class Template {
+        final Bitmap bitmap;
+        final int[] xs; // 横向切片边界
+        final int[] ys; // 纵向切片边界
+        final int arrowSize; // 箭头切片沿所在边的长度
+        final float arrowHalf; // 箭头顶点在箭头切片中的位置
+
+        Template(Bitmap bitmap, int[] xs, int[] ys, int arrowSize, float arrowHalf) {
+            this.bitmap = bitmap;
+            this.xs = xs;
+            this.ys = ys;
+            this.arrowSize = arrowSize;
+            this.arrowHalf = arrowHalf;
+        }
+    }
+
+    /**
+     * 取得样式对应的模板，缓存中没有时绘制并放入缓存
+     *
+     * @param key 样式
+     * @return 模板，样式不适用时为null
+     */
+    static Template obtain(Key key) {
+        Template template = sCache.get(key);
+        if (template == null) {
+            template = render(key);
+            if (template != null) {
+                Key cacheKey = new Key();
+                cacheKey.set(key);
+                sCache.put(cacheKey, template);
+            }
+        }
+        return template;
+    }
+
+    static void clear() {
+        sCache.evictAll();
+    }
+
+    private static Template render(Key key) {
+        final boolean arrowLeft = key.arrowDirection == BubbleGeometry.DIRECTION_LEFT;
+        final boolean arrowUp = key.arrowDirection == BubbleGeometry.DIRECTION_UP;
+        final boolean arrowRight = key.arrowDirection == BubbleGeometry.DIRECTION_RIGHT;
+        final boolean arrowDown = key.arrowDirection == BubbleGeometry.DIRECTION_DOWN;
+        final boolean horizontalArrow = arrowUp || arrowDown;
+        final boolean verticalArrow = arrowLeft || arrowRight;
+        final int arrowHeight = (int) Math.ceil(key.arrowHeight);
+
+        // 四边固定区域需容纳弧角、边线以及箭头高度，多留1像素给抗锯齿
+        final int left = (int) Math.ceil(Math.max(key.topLeftRadius, key.bottomLeftRadius) + key.borderWidth) + 1
+                + (arrowLeft ? arrowHeight : 0);
+        final int top = (int) Math.ceil(Math.max(key.topLeftRadius, key.topRightRadius) + key.borderWidth) + 1
+                + (arrowUp ? arrowHeight : 0);
+        final int right = (int) Math.ceil(Math.max(key.topRightRadius, key.bottomRightRadius) + key.borderWidth) + 1
+                + (arrowRight ? arrowHeight : 0);
+        final int bottom = (int) Math.ceil(Math.max(key.bottomLeftRadius, key.bottomRightRadius) + key.borderWidth) + 1
+                + (arrowDown ? arrowHeight : 0);
+        final int arrowSize = horizontalArrow || verticalArrow ? (int) Math.ceil(key.arrowWidth + key.borderWidth) + 2 : 0;
+
+        final int[] xs = horizontalArrow
+                ? new int[]{0, left, left + STRETCH, left + STRETCH + arrowSize, left + 2 * STRETCH + arrowSize,
+                left + 2 * STRETCH + arrowSize + right}
+                : new int[]{0, left, left + STRETCH, left + STRETCH + right};
+        final int[] ys = verticalArrow
+                ? new int[]{0, top, top + STRETCH, top + STRETCH + arrowSize, top + 2 * STRETCH + arrowSize,
+                top + 2 * STRETCH + arrowSize + bottom}
+                : new int[]{0, top, top + STRETCH, top + STRETCH + bottom};
+        final int width = xs[xs.length - 1];
+        final int height = ys[ys.length - 1];
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        // 箭头顶点放在箭头切片中央，通过目标偏移实现
+        final float arrowHalf = arrowSize / 2f;
+        final BubbleGeometry geometry = new BubbleGeometry();
+        final BubbleShape shape = geometry.getOriginalShape();
+        shape.Rect.set(0, 0, width, height);
+        shape.BorderWidth = key.borderWidth;
+        shape.ArrowHeight = key.arrowHeight;
+        shape.ArrowWidth = key.arrowWidth;
+        shape.TopLeftRadius = key.topLeftRadius;
+        shape.TopRightRadius = key.topRightRadius;
+        shape.BottomRightRadius = key.bottomRightRadius;
+        shape.BottomLeftRadius = key.bottomLeftRadius;
+        geometry.setFillPadding(key.fillPadding);
+        geometry.setArrowDirection(key.arrowDirection);
+        geometry.setArrowPosPolicy(BubbleGeometry.POLICY_TARGET_CENTER);
+        geometry.setArrowTo(xs[2] + arrowHalf - width / 2f, ys[2] + arrowHalf - height / 2f);
+        geometry.updateShapes();
+
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(bitmap);
+        final PathBuffer buffer = new PathBuffer();
+        final Path path = new Path();
+        final RectF ovalRect = new RectF();
+        final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+        geometry.buildFillPath(buffer);
+        BubbleDrawable.replay(buffer, path, ovalRect);
+        paint.setStyle(Paint.Style.FILL);
+        paint.setColor(key.fillColor);
+        canvas.drawPath(path, paint);
+
+        if (key.borderWidth > 0) {
+            geometry.buildBorderPath(buffer);
+            BubbleDrawable.replay(buffer, path, ovalRect);
+            paint.setStyle(Paint.Style.STROKE);
+            paint.setStrokeCap(Paint.Cap.ROUND);
+            paint.setStrokeJoin(Paint.Join.ROUND);
+            paint.setStrokeWidth(key.borderWidth);
+            paint.setColor(key.borderColor);
+            canvas.drawPath(path, paint);
+        }
+
+        return new Template(bitmap, xs, ys, arrowSize, arrowHalf);
+    }
+
+    /**
+     * 将模板拉伸绘制到指定尺寸
+     *
+     * @param arrowPeakX 箭头顶点x，箭头朝上/下时有效
+     * @param arrowPeakY 箭头顶点y，箭头朝左/右时有效
+     * @param dstXs      用于计算的临时数组，长度不小于6
+     * @param dstYs      用于计算的临时数组，长度不小于6
+     * @return 尺寸过小无法切片时返回false，此时应改用路径绘制
+     */
+    static boolean draw(Canvas canvas, Template template, int width, int height, float arrowPeakX, float arrowPeakY,
+                        Paint paint, Rect srcRect, Rect dstRect, int[] dstXs, int[] dstYs) {
+        final int[] xs = template.xs;
+        final int[] ys = template.ys;
+        final boolean horizontalArrow = xs.length > 4;
+        final boolean verticalArrow = ys.length > 4;
+
+        if (!layoutSlices(xs, width, horizontalArrow ? Math.round(arrowPeakX - template.arrowHalf) : 0,
+                template.arrowSize, dstXs)
+                || !layoutSlices(ys, height, verticalArrow ? Math.round(arrowPeakY - template.arrowHalf) : 0,
+                template.arrowSize, dstYs)) {
+            return false;
+        }
+
+        for (int i = 0; i < xs.length - 1; i++) {
+            if (dstXs[i + 1] <= dstXs[i]) {
+                continue;
+            }
+            for (int j = 0; j < ys.length - 1; j++) {
+                if (dstYs[j + 1] <= dstYs[j]) {
+                    continue;
+                }
+                srcRect.set(xs[i], ys[j], xs[i + 1], ys[j + 1]);
+                dstRect.set(dstXs[i], dstYs[j], dstXs[i + 1], dstYs[j + 1]);
+                canvas.drawBitmap(template.bitmap, srcRect, dstRect, paint);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 计算某一方向上各切片在目标中的边界
+     *
+     * @param src        模板中的切片边界
+     * @param size       目标尺寸
+     * @param arrowStart 箭头切片在目标中的起点，仅五段切片时有效
+     * @param arrowSize  箭头切片长度
+     * @param out        输出的切片边界
+     * @return 切片能否按顺序排开
+     */
+    private static boolean layoutSlices(int[] src, int size, int arrowStart, int arrowSize, int[] out) {
+        final int last = src.length - 1;
+        final int start = src[1];
+        final int end = size - (src[last] - src[last - 1]);
+        out[0] = 0;
+        out[1] = start;
+        if (last > 3) {
+            out[2] = arrowStart;
+            out[3] = arrowStart + arrowSize;
+            out[4] = end;
+            out[5] = size;
+            return start <= arrowStart && arrowStart + arrowSize <= end;
+        } else {
+            out[2] = end;
+            out[3] = size;
+            return start <= end;
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package com.cpiz.android.bubbleview;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+
+import com.cpiz.android.bubbleview.BubbleStyle.ArrowDirection;
+import com.cpiz.android.bubbleview.core.SpatialGrid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 在单个View中绘制大量文字气泡，如图片、地图上的标注
+ * 标注仅为轻量的数据记录，无需为每个标注创建气泡View，也不涉及测量、布局与位置查询；
+ * 所有标注在一次 onDraw 中共用一个气泡背景绘制，尺寸与样式相同的标注共用 {@link BubbleGeometryCache} 中的路径
+ * 标注按所占区域登记在 {@link SpatialGrid} 中，绘制时跳过可见区域外的标注，点击时只检查附近的标注
+ * 标注坐标使用本View的坐标系，后加入的标注在上层
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class BubbleOverlayView extends View {
+    /**
+     * 标注点击回调
+     */
+    public interface OnAnnotationClickListener {
+        void onAnnotationClick(BubbleOverlayView view, Annotation annotation);
+    }
+
+    /**
+     * 单个标注，箭头指向标注点
+     * 加入后修改需调用 {@link #notifyAnnotationsChanged()}
+     */
+    public static final class Annotation {
+        CharSequence mText;
+        float mAnchorX, mAnchorY;
+        ArrowDirection mArrowDirection = ArrowDirection.Down;
+        int mFillColor = 0xCC000000;
+        int mTextColor = Color.WHITE;
+        Object mTag;
+
+        // 由 BubbleOverlayView 计算，文字或全局样式变化后重新排版
+        boolean mLayoutDirty = true;
+        StaticLayout mLayout;
+        int mLeft, mTop, mRight, mBottom;
+
+        /**
+         * @param text    文字
+         * @param anchorX 标注点x
+         * @param anchorY 标注点y
+         */
+        public Annotation(CharSequence text, float anchorX, float anchorY) {
+            mText = text;
+            mAnchorX = anchorX;
+            mAnchorY = anchorY;
+        }
+
+        public CharSequence getText() {
+            return mText;
+        }
+
+        public Annotation setText(CharSequence text) {
+            mText = text;
+            mLayoutDirty = true;
+            return this;
+        }
+
+        public float getAnchorX() {
+            return mAnchorX;
+        }
+
+        public float getAnchorY() {
+            return mAnchorY;
+        }
+
+        public Annotation setAnchor(float anchorX, float anchorY) {
+            mAnchorX = anchorX;
+            mAnchorY = anchorY;
+            return this;
+        }
+
+        public ArrowDirection getArrowDirection() {
+            return mArrowDirection;
+        }
+
+        /**
+         * @param arrowDirection 箭头方向，如 Down 表示气泡在标注点上方；仅 Up/Down/Left/Right 有效，其余视为无箭头、气泡居中于标注点
+         */
+        public Annotation setArrowDirection(ArrowDirection arrowDirection) {
+            mArrowDirection = arrowDirection;
+            return this;
+        }
+
+        public Annotation setFillColor(int fillColor) {
+            mFillColor = fillColor;
+            return this;
+        }
+
+        public Annotation setTextColor(int textColor) {
+            mTextColor = textColor;
+            return this;
+        }
+
+        public Object getTag() {
+            return mTag;
+        }
+
+        public Annotation setTag(Object tag) {
+            mTag = tag;
+            return this;
+        }
+
+        /**
+         * @param outRect 气泡在View中所占的区域（含箭头），排版前为空
+         */
+        public void getBounds(Rect outRect) {
+            outRect.set(mLeft, mTop, mRight, mBottom);
+        }
+
+        ArrowDirection getDrawableArrowDirection() {
+            return mArrowDirection != null
+                    && (mArrowDirection.isLeft() || mArrowDirection.isUp() || mArrowDirection.isRight() || mArrowDirection.isDown())
+                    ? mArrowDirection : ArrowDirection.None;
+        }
+    }
+
+    private final List<Annotation> mAnnotations = new ArrayList<>();
+    private final TextPaint mTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final BubbleMetrics mMetrics = new BubbleMetrics();
+    private final BubbleDrawable mBubbleDrawable = new BubbleDrawable(mMetrics);
+    private final Rect mClipRect = new Rect();
+
+    private float mArrowHeight = Utils.dp2px(6);
+    private float mArrowWidth = Utils.dp2px(10);
+    private float mCornerRadius = Utils.dp2px(4);
+    private int mBubblePadding = Utils.dp2px(6);
+    private int mMaxTextWidth = Utils.dp2px(200);
+
+    private SpatialGrid mGrid = null; // 为null时需重建
+    private int[] mVisible = new int[64];
+    private OnAnnotationClickListener mOnAnnotationClickListener = null;
+    private Annotation mPressedAnnotation = null;
+
+    public BubbleOverlayView(Context context) {
+        this(context, null);
+    }
+
+    public BubbleOverlayView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public BubbleOverlayView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        mTextPaint.setTextSize(Utils.dp2px(14));
+    }
+
+    /**
+     * @return 气泡背景的性能统计
+     */
+    public BubbleMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    public void addAnnotation(Annotation annotation) {
+        mAnnotations.add(annotation);
+        notifyAnnotationsChanged();
+    }
+
+    public void removeAnnotation(Annotation annotation) {
+        if (mAnnotations.remove(annotation)) {
+            if (mPressedAnnotation == annotation) {
+                mPressedAnnotation = null;
+            }
+            notifyAnnotationsChanged();
+        }
+    }
+
+    public void setAnnotations(List<Annotation> annotations) {
+        mAnnotations.clear();
+        mAnnotations.addAll(annotations);
+        mPressedAnnotation = null;
+        notifyAnnotationsChanged();
+    }
+
+    public void clearAnnotations() {
+        setAnnotations(new ArrayList<Annotation>());
+    }
+
+    public int getAnnotationCount() {
+        return mAnnotations.size();
+    }
+
+    public Annotation getAnnotation(int index) {
+        return mAnnotations.get(index);
+    }
+
+    /**
+     * 标注的文字、位置或样式变化后调用，下次绘制或点击时重建索引，仅重新排版文字变化的标注
+     */
+    public void notifyAnnotationsChanged() {
+        mGrid = null;
+        invalidate();
+    }
+
+    public void setOnAnnotationClickListener(OnAnnotationClickListener listener) {
+        mOnAnnotationClickListener = listener;
+    }
+
+    /**
+     * 设置所有标注的文字大小
+     *
+     * @param textSize 文字大小，px
+     */
+    public void setTextSize(float textSize) {
+        mTextPaint.setTextSize(textSize);
+        invalidateLayouts();
+    }
+
+    public float getTextSize() {
+        return mTextPaint.getTextSize();
+    }
+
+    /**
+     * @param maxTextWidth 文字的最大宽度，px，超出时换行
+     */
+    public void setMaxTextWidth(int maxTextWidth) {
+        mMaxTextWidth = maxTextWidth;
+        invalidateLayouts();
+    }
+
+    /**
+     * @param padding 文字与气泡边缘的距离，px，不含箭头
+     */
+    public void setBubblePadding(int padding) {
+        mBubblePadding = padding;
+        notifyAnnotationsChanged();
+    }
+
+    public void setArrowHeight(float arrowHeight) {
+        mArrowHeight = arrowHeight;
+        notifyAnnotationsChanged();
+    }
+
+    public void setArrowWidth(float arrowWidth) {
+        mArrowWidth = arrowWidth;
+        invalidate();
+    }
+
+    public void setCornerRadius(float radius) {
+        mCornerRadius = radius;
+        invalidate();
+    }
+
+    /**
+     * 查找某点处最上层的标注
+     *
+     * @return 标注，没有时为null
+     */
+    public Annotation findAnnotationAt(float x, float y) {
+        ensureIndex();
+        final int index = mGrid.findAt((int) Math.floor(x), (int) Math.floor(y));
+        return index >= 0 ? mAnnotations.get(index) : null;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mAnnotations.isEmpty() || !canvas.getClipBounds(mClipRect)) {
+            return;
+        }
+
+        ensureIndex();
+        int count = mGrid.query(mClipRect.left, mClipRect.top, mClipRect.right, mClipRect.bottom, mVisible);
+        if (count > mVisible.length) {
+            mVisible = new int[Math.max(count, mVisible.length * 2)];
+            count = mGrid.query(mClipRect.left, mClipRect.top, mClipRect.right, mClipRect.bottom, mVisible);
+        }
+
+        // 按加入顺序绘制，与点击查找的上下层一致
+        Arrays.sort(mVisible, 0, count);
+        for (int i = 0; i < count; i++) {
+            drawAnnotation(canvas, mAnnotations.get(mVisible[i]));
+        }
+    }
+
+    @SuppressLint("ClickableViewAccessibility")
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                // 未点中标注时不消费，交给下层的图片或地图
+                mPressedAnnotation = findAnnotationAt(event.getX(), event.getY());
+                return mPressedAnnotation != null;
+            case MotionEvent.ACTION_UP:
+                final Annotation pressed = mPressedAnnotation;
+                mPressedAnnotation = null;
+                if (pressed != null && findAnnotationAt(event.getX(), event.getY()) == pressed
+                        && mOnAnnotationClickListener != null) {
+                    mOnAnnotationClickListener.onAnnotationClick(this, pressed);
+                }
+                return pressed != null;
+            case MotionEvent.ACTION_CANCEL:
+                mPressedAnnotation = null;
+                return true;
+            default:
+                return mPressedAnnotation != null;
+        }
+    }
+
+    private void invalidateLayouts() {
+        for (Annotation annotation : mAnnotations) {
+            annotation.mLayoutDirty = true;
+        }
+        notifyAnnotationsChanged();
+    }
+
+    private void ensureIndex() {
+        if (mGrid != null) {
+            return;
+        }
+
+        final int count = mAnnotations.size();
+        long sizeSum = 0;
+        for (int i = 0; i < count; i++) {
+            final Annotation annotation = mAnnotations.get(i);
+            layoutAnnotation(annotation);
+            sizeSum += Math.max(annotation.mRight - annotation.mLeft, annotation.mBottom - annotation.mTop);
+        }
+
+        // 格子与标注的平均尺寸相当
+        mGrid = new SpatialGrid((int) Math.max(Utils.dp2px(32), count > 0 ? sizeSum / count : 0));
+        for (int i = 0; i < count; i++) {
+            final Annotation annotation = mAnnotations.get(i);
+            mGrid.add(annotation.mLeft, annotation.mTop, annotation.mRight, annotation.mBottom);
+        }
+    }
+
+    /**
+     * 排版文字，并按箭头方向计算气泡区域，使箭头顶点落在标注点上
+     */
+    private void layoutAnnotation(Annotation annotation) {
+        if (annotation.mLayoutDirty || annotation.mLayout == null) {
+            final CharSequence text = annotation.mText != null ? annotation.mText : "";
+            final int width = (int) Math.ceil(Math.min(Layout.getDesiredWidth(text, mTextPaint), mMaxTextWidth));
+            annotation.mLayout = new StaticLayout(text, mTextPaint, Math.max(0, width),
+                    Layout.Alignment.ALIGN_NORMAL, 1, 0, false);
+            annotation.mLayoutDirty = false;
+        }
+
+        final int arrowHeight = (int) Math.ceil(mArrowHeight);
+        int width = annotation.mLayout.getWidth() + 2 * mBubblePadding;
+        int height = annotation.mLayout.getHeight() + 2 * mBubblePadding;
+        final int anchorX = Math.round(annotation.mAnchorX);
+        final int anchorY = Math.round(annotation.mAnchorY);
+        switch (annotation.getDrawableArrowDirection()) {
+            case Up:
+                height += arrowHeight;
+                annotation.mLeft = anchorX - width / 2;
+                annotation.mTop = anchorY;
+                break;
+            case Down:
+                height += arrowHeight;
+                annotation.mLeft = anchorX - width / 2;
+                annotation.mTop = anchorY - height;
+                break;
+            case Left:
+                width += arrowHeight;
+                annotation.mLeft = anchorX;
+                annotation.mTop = anchorY - height / 2;
+                break;
+            case Right:
+                width += arrowHeight;
+                annotation.mLeft = anchorX - width;
+                annotation.mTop = anchorY - height / 2;
+                break;
+            default:
+                annotation.mLeft = anchorX - width / 2;
+                annotation.mTop = anchorY - height / 2;
+                break;
+        }
+        annotation.mRight = annotation.mLeft + width;
+        annotation.mBottom = annotation.mTop + height;
+    }
+
+    private void drawAnnotation(Canvas canvas, Annotation annotation) {
+        final ArrowDirection direction = annotation.getDrawableArrowDirection();
+        final int width = annotation.mRight - annotation.mLeft;
+        final int height = annotation.mBottom - annotation.mTop;
+
+        final BubbleDrawable drawable = mBubbleDrawable;
+        drawable.resetRect(width, height);
+        drawable.setCornerRadius(mCornerRadius, mCornerRadius, mCornerRadius, mCornerRadius);
+        drawable.setFillColor(annotation.mFillColor);
+        drawable.setArrowDirection(direction);
+        drawable.setArrowPosPolicy(BubbleStyle.ArrowPosPolicy.TargetCenter);
+        // 目标坐标相对于气泡中心，标注点贴近边缘时箭头随之偏移
+        drawable.setArrowTo(annotation.mAnchorX - (annotation.mLeft + width / 2f),
+                annotation.mAnchorY - (annotation.mTop + height / 2f));
+        drawable.setArrowHeight(mArrowHeight);
+        drawable.setArrowWidth(mArrowWidth);
+        drawable.updateShapes();
+
+        final int saveCount = canvas.save();
+        canvas.translate(annotation.mLeft, annotation.mTop);
+        drawable.draw(canvas);
+
+        // 文字位于箭头以外的主体中
+        final int arrowHeight = (int) Math.ceil(mArrowHeight);
+        canvas.translate(mBubblePadding + (direction == ArrowDirection.Left ? arrowHeight : 0),
+                mBubblePadding + (direction == ArrowDirection.Up ? arrowHeight : 0));
+        mTextPaint.setColor(annotation.mTextColor);
+        annotation.mLayout.draw(canvas);
+        canvas.restoreToCount(saveCount);
+    }
+}
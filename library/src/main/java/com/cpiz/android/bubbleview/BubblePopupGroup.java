@@ -0,0 +1,118 @@
+package com.cpiz.android.bubbleview;
+
+import android.view.View;
+
+import com.cpiz.android.bubbleview.core.BubblePlacementSolver;
+
+import java.util.ArrayList;
+
+/**
+ * 同时显示的一组气泡弹窗，如页面上的多处标注
+ * 显示前先测量所有弹窗，再由 {@link BubblePlacementSolver} 一次算出互不重叠的摆放，然后依次弹出，
+ * 避免逐个显示后相互遮挡、再关闭重弹
+ * 每个弹窗可给出多个可选的相对位置，先给出的优先；弹窗也可沿箭头所在的边平移以避让
+ * 仅可在主线程使用
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class BubblePopupGroup {
+    private final ArrayList<BubblePopupWindow> mPopups = new ArrayList<>();
+    private final ArrayList<View> mAnchors = new ArrayList<>();
+    private final ArrayList<BubblePlacementSolver.Request> mRequests = new ArrayList<>();
+    private final int[] mLocation = new int[2];
+
+    /**
+     * 添加弹窗
+     *
+     * @param popup        弹窗
+     * @param anchor       气泡箭头指向的目标
+     * @param marginH      水平方向与目标的距离
+     * @param marginV      垂直方向与目标的距离
+     * @param relativePoss 可选的相对位置，先给出的优先；不给出时为水平居中、下方
+     */
+    public BubblePopupGroup add(BubblePopupWindow popup, View anchor, int marginH, int marginV,
+                                RelativePos... relativePoss) {
+        final BubblePlacementSolver.Request request = new BubblePlacementSolver.Request();
+        request.marginH = marginH;
+        request.marginV = marginV;
+        for (RelativePos relativePos : relativePoss) {
+            request.addRelativePos(relativePos.getHorizontalRelate(), relativePos.getVerticalRelate());
+        }
+        mPopups.add(popup);
+        mAnchors.add(anchor);
+        mRequests.add(request);
+        return this;
+    }
+
+    public int size() {
+        return mPopups.size();
+    }
+
+    /**
+     * 测量所有弹窗并计算摆放后依次显示，目标已不在窗口中的弹窗不显示
+     * 所有目标须位于同一窗口
+     */
+    public void show() {
+        final ArrayList<BubblePopupWindow> popups = new ArrayList<>();
+        final ArrayList<View> anchors = new ArrayList<>();
+        final ArrayList<BubblePlacementSolver.Request> requests = new ArrayList<>();
+        int padding = 0;
+        for (int i = 0; i < mPopups.size(); i++) {
+            if (mAnchors.get(i).getWindowToken() != null) {
+                popups.add(mPopups.get(i));
+                anchors.add(mAnchors.get(i));
+                requests.add(mRequests.get(i));
+                padding = Math.max(padding, mPopups.get(i).getPadding());
+            }
+        }
+        if (popups.isEmpty()) {
+            return;
+        }
+
+        final DisplayGeometry displayGeometry = DisplayGeometry.of(anchors.get(0));
+        final int screenWidth = displayGeometry.getScreenWidth();
+        final int screenHeight = displayGeometry.getScreenHeight();
+        for (int i = 0; i < popups.size(); i++) {
+            final BubblePopupWindow popup = popups.get(i);
+            final View anchor = anchors.get(i);
+            final BubblePlacementSolver.Request request = requests.get(i);
+            anchor.getLocationInWindow(mLocation);
+            request.anchorLeft = mLocation[0];
+            request.anchorTop = mLocation[1];
+            request.anchorRight = mLocation[0] + anchor.getWidth();
+            request.anchorBottom = mLocation[1] + anchor.getHeight();
+            popup.measureContent(screenWidth, screenHeight);
+            request.contentWidth = popup.getMeasuredContentWidth();
+            request.contentHeight = popup.getMeasuredContentHeight();
+        }
+
+        final boolean traced = BubbleTrace.begin(BubbleTrace.POPUP_PLACE);
+        new BubblePlacementSolver(screenWidth, screenHeight, padding)
+                .solve(requests.toArray(new BubblePlacementSolver.Request[requests.size()]));
+        BubbleTrace.end(traced);
+
+        for (int i = 0; i < popups.size(); i++) {
+            popups.get(i).showArrowTo(anchors.get(i), requests.get(i));
+        }
+    }
+
+    /**
+     * 关闭所有弹窗
+     */
+    public void dismiss() {
+        for (BubblePopupWindow popup : mPopups) {
+            popup.dismiss();
+        }
+    }
+
+    /**
+     * 关闭并移除所有弹窗
+     */
+    public void clear() {
+        dismiss();
+        mPopups.clear();
+        mAnchors.clear();
+        mRequests.clear();
+    }
+}
@@ -0,0 +1,200 @@
+package com.cpiz.android.bubbleview;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.support.annotation.LayoutRes;
+import android.view.LayoutInflater;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * 气泡弹窗池
+ * 反复弹出的提示气泡可从池中获取，关闭后自动重置并归还，再次弹出时复用弹窗与已填充的内容View，
+ * 省去布局填充与弹窗初始化
+ * 弹窗按内容布局（或自定义的样式键）分组，总数不超过容量，内存紧张时释放
+ * 池中的弹窗持有创建时的 Context，建议随 Activity 创建，并在其销毁时调用 {@link #destroy()}
+ * 仅可在主线程使用
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class BubblePopupPool {
+    private static final int DEFAULT_CAPACITY = 8;
+
+    /**
+     * 池中没有可用弹窗时，用于创建新弹窗
+     */
+    public interface Factory {
+        BubblePopupWindow create(Context context);
+    }
+
+    private final Context mAppContext;
+    private final HashMap<Object, ArrayList<BubblePopupWindow>> mPopups = new HashMap<>();
+    private int mCapacity;
+    private int mSize = 0;
+
+    private final ComponentCallbacks2 mTrimCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+                clear();
+            } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW) {
+                trimToSize(mCapacity / 2);
+            }
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+            // 配置变化后已填充的布局可能不再适用
+            clear();
+        }
+
+        @Override
+        public void onLowMemory() {
+            clear();
+        }
+    };
+
+    public BubblePopupPool(Context context) {
+        this(context, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param context  用于注册内存回调
+     * @param capacity 池中最多保留的弹窗数
+     */
+    public BubblePopupPool(Context context, int capacity) {
+        mAppContext = context.getApplicationContext();
+        mCapacity = capacity;
+        mAppContext.registerComponentCallbacks(mTrimCallbacks);
+    }
+
+    /**
+     * 按内容布局获取弹窗，布局的根View或其子孙中须有一个气泡View
+     *
+     * @param context  用于填充布局
+     * @param layoutId 内容布局
+     * @return 已重置的弹窗，关闭后自动归还，归还后请勿再使用
+     */
+    public BubblePopupWindow obtain(Context context, @LayoutRes int layoutId) {
+        final Integer key = layoutId;
+        BubblePopupWindow popup = poll(context, key);
+        if (popup == null) {
+            final View contentView = LayoutInflater.from(context).inflate(layoutId, null);
+            final BubbleStyle bubbleView = Utils.findBubble(contentView);
+            if (bubbleView == null) {
+                throw new IllegalArgumentException("No bubble view in layout " + layoutId);
+            }
+            popup = new BubblePopupWindow(contentView, bubbleView);
+        }
+        popup.attachToPool(this, key);
+        return popup;
+    }
+
+    /**
+     * 按自定义的样式键获取弹窗
+     *
+     * @param context 弹窗所属的 Context，与池中弹窗不一致时不复用
+     * @param key     样式键，键相同的弹窗应可互换
+     * @param factory 池中没有可用弹窗时用于创建
+     * @return 已重置的弹窗，关闭后自动归还，归还后请勿再使用
+     */
+    public BubblePopupWindow obtain(Context context, Object key, Factory factory) {
+        BubblePopupWindow popup = poll(context, key);
+        if (popup == null) {
+            popup = factory.create(context);
+        }
+        popup.attachToPool(this, key);
+        return popup;
+    }
+
+    /**
+     * 取出一个同组且属于同一 Context 的弹窗，其它 Context 的弹窗直接丢弃
+     */
+    private BubblePopupWindow poll(Context context, Object key) {
+        final ArrayList<BubblePopupWindow> popups = mPopups.get(key);
+        while (popups != null && !popups.isEmpty()) {
+            final BubblePopupWindow popup = popups.remove(popups.size() - 1);
+            mSize--;
+            if (popup.getContentView().getContext() == context) {
+                return popup;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 弹窗关闭后归还，超出容量时丢弃
+     * 归还时即解除与池的关联，由 obtain 重新关联；调用方仍持有弹窗并再次显示、关闭时不会重复归还
+     */
+    void release(Object key, BubblePopupWindow popup) {
+        popup.attachToPool(null, null);
+        popup.reset();
+        if (mSize >= mCapacity) {
+            return;
+        }
+
+        ArrayList<BubblePopupWindow> popups = mPopups.get(key);
+        if (popups == null) {
+            popups = new ArrayList<>();
+            mPopups.put(key, popups);
+        }
+        popups.add(popup);
+        mSize++;
+    }
+
+    /**
+     * @return 池中可复用的弹窗数
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * 设置容量，超出部分立即释放
+     *
+     * @param capacity 池中最多保留的弹窗数
+     */
+    public void setCapacity(int capacity) {
+        mCapacity = capacity;
+        trimToSize(capacity);
+    }
+
+    /**
+     * 释放池中的所有弹窗
+     */
+    public void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * 释放所有弹窗并注销内存回调，之后关闭的弹窗不再归还
+     */
+    public void destroy() {
+        mCapacity = 0;
+        clear();
+        mAppContext.unregisterComponentCallbacks(mTrimCallbacks);
+    }
+
+    private void trimToSize(int maxSize) {
+        final Iterator<ArrayList<BubblePopupWindow>> iterator = mPopups.values().iterator();
+        while (mSize > maxSize && iterator.hasNext()) {
+            final ArrayList<BubblePopupWindow> popups = iterator.next();
+            while (mSize > maxSize && !popups.isEmpty()) {
+                popups.remove(popups.size() - 1);
+                mSize--;
+            }
+            if (popups.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+}
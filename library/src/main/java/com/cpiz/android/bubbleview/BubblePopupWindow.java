@@ -1,21 +1,21 @@
 package com.cpiz.android.bubbleview;
 
 import android.annotation.SuppressLint;
-import android.content.res.Resources;
 import android.graphics.Color;
 import android.graphics.Rect;
 import android.graphics.drawable.ColorDrawable;
-import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
-import android.util.Log;
-import android.view.Gravity;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.PopupWindow;
 
 import com.cpiz.android.bubbleview.BubbleStyle.ArrowDirection;
 import com.cpiz.android.bubbleview.BubbleStyle.ArrowPosPolicy;
+import com.cpiz.android.bubbleview.core.BubbleGeometry;
+import com.cpiz.android.bubbleview.core.BubblePlacement;
+import com.cpiz.android.bubbleview.core.BubblePlacement.PopupProp;
+import com.cpiz.android.bubbleview.core.BubblePlacementSolver;
 
 import static com.cpiz.android.bubbleview.RelativePos.CENTER_HORIZONTAL;
 import static com.cpiz.android.bubbleview.Utils.dp2px;
@@ -29,19 +29,86 @@ import static com.cpiz.android.bubbleview.Utils.dp2px;
 @SuppressWarnings({"WeakerAccess", "unused"})
 @SuppressLint("RtlHardcoded")
 public class BubblePopupWindow extends PopupWindow {
-    private static final String TAG = "BubblePopupWindow";
+    private static final int DEFAULT_PADDING_DP = 2;
 
-    private int mPadding = dp2px(2);
+    // 所有弹窗共用主线程Handler，只按各自的 Runnable 移除
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    private int mPadding = dp2px(DEFAULT_PADDING_DP);
     private int mArrowPosDelta = 0;
     private BubbleStyle mBubbleView;
+    private final PopupProp mPopupProp = new PopupProp();
     private long mDelayMillis = 0;
-    private Handler mHandler = new Handler(Looper.getMainLooper());
-    private Runnable mDismissRunnable = new Runnable() {
+    private final Runnable mDismissRunnable = new Runnable() {
         @Override
         public void run() {
             dismiss();
         }
     };
+    private final View.OnClickListener mDismissOnClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            dismiss();
+        }
+    };
+
+    // 跟随模式下，目标移动时通过 update 移动弹窗，而不是关闭后重新弹出
+    private boolean mFollowAnchor = false;
+    private View mFollowingAnchor = null;
+    private BubbleAnchorTracker mFollowTracker = null;
+    private RelativePos mRelativePos = null;
+    private int mMarginH, mMarginV;
+    private int mContentWidth, mContentHeight;
+    private int mShownGravity, mShownX, mShownY, mShownWidth;
+    private boolean mRepositioning = false; // 跟随时重新弹出，不视为关闭
+    private boolean mReshowing = false; // 显示中再次 showArrowTo，关闭后不归还弹窗池
+    private final Rect mAnchorRect = new Rect();
+    private final Rect mShowAnchorRect = new Rect();
+    private final int[] mLocation = new int[2];
+
+    // 内容测量与摆放计算的缓存，输入未变化时再次显示跳过测量与计算
+    private int mContentVersion = 0;
+    private final PopupMeasureCache mMeasureCache = new PopupMeasureCache();
+    private boolean mMeasuredBeforeShow = false; // 已提前测量但尚未显示，内容的布局请求标记属于这次测量
+    private boolean mPropCached = false;
+    private int mCachedScreenWidth, mCachedScreenHeight, mCachedNavigationBarHeight, mCachedPadding;
+    private int mCachedAnchorLeft, mCachedAnchorTop, mCachedAnchorRight, mCachedAnchorBottom;
+    private int mCachedContentWidth, mCachedContentHeight;
+    private int mCachedHorizontalRelate, mCachedVerticalRelate, mCachedMarginH, mCachedMarginV;
+    private final Rect mVisibleRect = new Rect();
+    private final BubbleAnchorTracker.Client mFollowClient = new FollowClient();
+    private final View.OnAttachStateChangeListener mAnchorAttachListener = new View.OnAttachStateChangeListener() {
+        @Override
+        public void onViewAttachedToWindow(View v) {
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(View v) {
+            dismiss();
+        }
+    };
+
+    // 来自 BubblePopupPool 时，关闭后归还复用
+    private OnDismissListener mOnDismissListener = null;
+    private BubblePopupPool mPool = null;
+    private Object mPoolKey = null;
+    private final OnDismissListener mInternalDismissListener = new OnDismissListener() {
+        @Override
+        public void onDismiss() {
+            if (mRepositioning) {
+                return;
+            }
+            stopFollowing();
+            sHandler.removeCallbacks(mDismissRunnable);
+            final OnDismissListener listener = mOnDismissListener;
+            if (listener != null) {
+                listener.onDismiss();
+            }
+            if (mPool != null && !mReshowing) {
+                mPool.release(mPoolKey, BubblePopupWindow.this);
+            }
+        }
+    };
 
     /**
      * 构造函数
@@ -60,26 +127,65 @@ public class BubblePopupWindow extends PopupWindow {
         setBackgroundDrawable(new ColorDrawable(Color.TRANSPARENT));
         setCancelOnTouchOutside(true);
         setCancelOnTouch(true);
+        super.setOnDismissListener(mInternalDismissListener);
     }
 
     @Override
     public void dismiss() {
-        mHandler.removeCallbacks(mDismissRunnable); // prevent leak
+        sHandler.removeCallbacks(mDismissRunnable); // prevent leak
         super.dismiss();
     }
 
+    @Override
+    public void setOnDismissListener(OnDismissListener listener) {
+        mOnDismissListener = listener;
+    }
+
+    /**
+     * 关联到弹窗池，关闭后归还
+     */
+    void attachToPool(BubblePopupPool pool, Object key) {
+        mPool = pool;
+        mPoolKey = key;
+    }
+
+    /**
+     * 归还弹窗池前恢复默认设置，内容View及其测量结果保留复用
+     */
+    void reset() {
+        sHandler.removeCallbacks(mDismissRunnable);
+        mPadding = dp2px(DEFAULT_PADDING_DP);
+        mArrowPosDelta = 0;
+        mDelayMillis = 0;
+        mOnDismissListener = null;
+        mFollowAnchor = false;
+        setCancelOnTouchOutside(true);
+        setCancelOnTouch(true);
+    }
+
+    /**
+     * 通知内容已变化，下次显示时重新测量
+     * 显示过的内容修改后会自行请求布局，无需调用；
+     * 仅在提前测量（如 {@link BubbleTourQueue} 的预备）之后、显示之前修改内容时需要
+     */
+    public void invalidateContent() {
+        mContentVersion++;
+    }
+
+    /**
+     * @return 弹窗中的气泡
+     */
+    public BubbleStyle getBubbleView() {
+        return mBubbleView;
+    }
+
     /**
      * 设置点击气泡关闭弹窗
      *
      * @param cancel 是否点击气泡关闭弹窗，默认是
      */
     public void setCancelOnTouch(boolean cancel) {
-        getContentView().setOnClickListener(cancel ? new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                dismiss();
-            }
-        } : null);
+        getContentView().setOnClickListener(cancel ? mDismissOnClickListener : null);
     }
 
     /**
@@ -98,13 +204,24 @@ public class BubblePopupWindow extends PopupWindow {
      * @param delayMillis 自动关闭延时，设0将不会自动关闭
      */
     public void setCancelOnLater(long delayMillis) {
-        mHandler.removeCallbacks(mDismissRunnable);
+        sHandler.removeCallbacks(mDismissRunnable);
         mDelayMillis = delayMillis;
         if (delayMillis > 0) {
-            mHandler.postDelayed(mDismissRunnable, delayMillis);
+            sHandler.postDelayed(mDismissRunnable, delayMillis);
         }
     }
 
+    /**
+     * 设置弹窗跟随目标移动，适用于指向列表等可滚动区域内的目标
+     * 开启后，目标在窗口中的位置每帧检查一次，移动时按原有的摆放规则重新计算位置并原地移动弹窗，
+     * 目标完全滚出可见区域或从窗口移除时自动关闭；在下一次 showArrowTo 时生效
+     *
+     * @param follow 是否跟随目标，默认否
+     */
+    public void setFollowAnchor(boolean follow) {
+        mFollowAnchor = follow;
+    }
+
     /**
      * 设置气泡与屏幕边缘的（最小）间距
      * 因为气泡紧贴着屏幕边缘不太美观
@@ -115,6 +232,10 @@ public class BubblePopupWindow extends PopupWindow {
         mPadding = padding;
     }
 
+    int getPadding() {
+        return mPadding;
+    }
+
     /**
      * 设置箭头在所在边线上的偏移距离
      * 这是一个快捷入口，将转调BubbleView的setArrowPosDelta
@@ -174,177 +295,276 @@ public class BubblePopupWindow extends PopupWindow {
      * @param relativePos 气泡与目标的对齐方式
      */
     public void showArrowTo(View anchor, RelativePos relativePos, int marginH, int marginV) {
+        final boolean traced = BubbleTrace.begin(BubbleTrace.POPUP_SHOW);
+        final long startNanos = BubbleMetrics.start();
+        mReshowing = true;
         dismiss();
+        mReshowing = false;
 
-        final int screenWidth = Resources.getSystem().getDisplayMetrics().widthPixels;
-        final int screenHeight = Resources.getSystem().getDisplayMetrics().heightPixels;
-        final int navigationBarHeight = getNavigationBarHeightDelta(anchor);
+        final DisplayGeometry displayGeometry = DisplayGeometry.of(anchor);
+        final int screenWidth = displayGeometry.getScreenWidth();
+        final int screenHeight = displayGeometry.getScreenHeight();
+        final int navigationBarHeight = displayGeometry.getNavigationBarHeight();
         final Rect anchorRect = getRectInWindow(anchor);
 
-        getContentView().measure(
-                View.MeasureSpec.makeMeasureSpec(screenWidth - 2 * mPadding, View.MeasureSpec.AT_MOST),
-                View.MeasureSpec.makeMeasureSpec(screenHeight - 2 * mPadding, View.MeasureSpec.AT_MOST));
-        final int contentWidth = getContentView().getMeasuredWidth();
-        final int contentHeight = getContentView().getMeasuredHeight();
-        Log.d(TAG, String.format("w:%d, h:%d", contentWidth, contentHeight));
+        measureContent(screenWidth, screenHeight);
+        mContentWidth = getMeasuredContentWidth();
+        mContentHeight = getMeasuredContentHeight();
+
+        final PopupProp outProp = computePopupProp(screenWidth, screenHeight, navigationBarHeight, anchorRect,
+                relativePos, marginH, marginV);
+        showWithProp(anchor, outProp);
+
+        if (mFollowAnchor) {
+            startFollowing(anchor, relativePos, marginH, marginV);
+        }
+        mBubbleView.getMetrics().end(BubbleMetrics.POPUP_SHOW, startNanos);
+        BubbleTrace.end(traced);
+    }
 
-        PopupProp outProp = new PopupProp();
-        getPopupProp(screenWidth, screenHeight, navigationBarHeight, anchorRect, contentWidth, contentHeight, relativePos, marginH, marginV, mPadding, outProp);
+    /**
+     * 按 {@link BubblePlacementSolver} 算出的摆放显示，内容须已按同一屏幕尺寸测量
+     * 摆放由多个弹窗共同决定，不支持跟随模式
+     *
+     * @param anchor 气泡箭头对齐的目标
+     * @param placed 摆放结果，坐标为窗口坐标
+     */
+    void showArrowTo(View anchor, BubblePlacementSolver.Request placed) {
+        final boolean traced = BubbleTrace.begin(BubbleTrace.POPUP_SHOW);
+        final long startNanos = BubbleMetrics.start();
+        mReshowing = true;
+        dismiss();
+        mReshowing = false;
+
+        final DisplayGeometry displayGeometry = DisplayGeometry.of(anchor);
+        mContentWidth = getMeasuredContentWidth();
+        mContentHeight = getMeasuredContentHeight();
+
+        // 箭头方向与位置策略同单独显示时，位置改用算出的左上角
+        PopupProp outProp = mPopupProp;
+        mPropCached = false;
+        BubblePlacement.getPopupProp(displayGeometry.getScreenWidth(), displayGeometry.getScreenHeight(),
+                displayGeometry.getNavigationBarHeight(),
+                placed.anchorLeft, placed.anchorTop, placed.anchorRight, placed.anchorBottom,
+                mContentWidth, mContentHeight, placed.horizontalRelate, placed.verticalRelate,
+                placed.marginH, placed.marginV, mPadding, outProp);
+        outProp.gravity = BubblePlacement.GRAVITY_LEFT | BubblePlacement.GRAVITY_TOP;
+        outProp.x = placed.left;
+        outProp.y = placed.top;
+        outProp.maxWidth = placed.right - placed.left;
+        if (placed.shifted) {
+            // 平移后不再与目标边缘对齐，箭头改为指向目标中心
+            outProp.arrowPosPolicy = BubbleGeometry.POLICY_TARGET_CENTER;
+        }
+        showWithProp(anchor, outProp);
+        mBubbleView.getMetrics().end(BubbleMetrics.POPUP_SHOW, startNanos);
+        BubbleTrace.end(traced);
+    }
+
+    private void showWithProp(View anchor, PopupProp prop) {
+        final ArrowDirection direction = ArrowDirection.valueOf(prop.direction);
 
         setWidth(ViewGroup.LayoutParams.WRAP_CONTENT);
         setHeight(ViewGroup.LayoutParams.WRAP_CONTENT);
-        setAnimationStyle(outProp.animationStyle);
-        if (contentWidth > outProp.maxWidth) {
-            setWidth(outProp.maxWidth);
+        setAnimationStyle(getAnimationStyle(direction));
+        mShownWidth = mContentWidth;
+        if (mContentWidth > prop.maxWidth) {
+            setWidth(prop.maxWidth);
+            mShownWidth = prop.maxWidth;
         }
-        mBubbleView.setArrowDirection(outProp.direction);
-        mBubbleView.setArrowPosPolicy(outProp.arrowPosPolicy);
-        mBubbleView.setArrowTo(anchor);
-        mBubbleView.setArrowPosDelta(mArrowPosDelta);
-        showAtLocation(anchor, outProp.gravity, outProp.x, outProp.y);
+        mBubbleView.edit()
+                .setArrowDirection(direction)
+                .setArrowPosPolicy(ArrowPosPolicy.valueOf(prop.arrowPosPolicy))
+                .setArrowTo(anchor)
+                .setArrowPosDelta(mArrowPosDelta)
+                .apply();
+        showAtLocation(anchor, prop.gravity, prop.x, prop.y);
+        mMeasuredBeforeShow = false; // 之后的布局请求来自内容变化
+        mShownGravity = prop.gravity;
+        mShownX = prop.x;
+        mShownY = prop.y;
 
         if (mDelayMillis > 0) {
             setCancelOnLater(mDelayMillis);
         }
     }
 
-    private static Rect getRectInWindow(View view) {
-        final int[] location = new int[2];
-        view.getLocationInWindow(location);
-        return new Rect(location[0], location[1], location[0] + view.getWidth(), location[1] + view.getHeight());
+    /**
+     * 按屏幕尺寸测量内容，可在显示前提前调用，显示时约束未变即复用测量结果
+     */
+    void measureContent(int screenWidth, int screenHeight) {
+        final View contentView = getContentView();
+        final int widthSpec = View.MeasureSpec.makeMeasureSpec(screenWidth - 2 * mPadding, View.MeasureSpec.AT_MOST);
+        final int heightSpec = View.MeasureSpec.makeMeasureSpec(screenHeight - 2 * mPadding, View.MeasureSpec.AT_MOST);
+        if (mMeasureCache.isValid(mContentVersion, widthSpec, heightSpec)
+                && (mMeasuredBeforeShow || !contentView.isLayoutRequested())) {
+            return;
+        }
+
+        final boolean traced = BubbleTrace.begin(BubbleTrace.POPUP_MEASURE);
+        contentView.measure(widthSpec, heightSpec);
+        BubbleTrace.end(traced);
+        mMeasureCache.set(mContentVersion, widthSpec, heightSpec,
+                contentView.getMeasuredWidth(), contentView.getMeasuredHeight());
+        mMeasuredBeforeShow = true;
     }
 
-    private static void getPopupProp(final int screenWidth, final int screenHeight,
-                                     final int navigationBarHeight, final Rect anchorRect,
-                                     final int contentWidth, final int contentHeight,
-                                     final RelativePos relativePos, final int marginH, final int marginV, final int padding,
-                                     PopupProp outProp) {
-        outProp.direction = relativePos.getArrowDirection();
-        outProp.animationStyle = getAnimationStyle(outProp.direction);
-        outProp.gravity = 0;
-        getPopupPropOfX(screenWidth, anchorRect, contentWidth, relativePos, marginH, padding, outProp);
-        getPopupPropOfMaxWidth(screenWidth, anchorRect, relativePos, marginH, padding, outProp);
-        getPopupPropOfY(screenHeight, navigationBarHeight, anchorRect, relativePos, marginV, outProp);
-
-        switch (outProp.direction) {
-            case Up:
-            case Down:
-                switch (relativePos.getHorizontalRelate()) {
-                    case RelativePos.CENTER_HORIZONTAL:
-                        outProp.arrowPosPolicy = ArrowPosPolicy.TargetCenter;
-                        break;
-                    case RelativePos.ALIGN_LEFT:
-                        outProp.arrowPosPolicy = ArrowPosPolicy.SelfBegin;
-                        break;
-                    case RelativePos.ALIGN_RIGHT:
-                        outProp.arrowPosPolicy = ArrowPosPolicy.SelfEnd;
-                        break;
-                    default:
-                        outProp.arrowPosPolicy = ArrowPosPolicy.TargetCenter;
-                        break;
-                }
-                break;
-            case Left:
-            case Right:
-                switch (relativePos.getVerticalRelate()) {
-                    case RelativePos.CENTER_HORIZONTAL:
-                        outProp.arrowPosPolicy = ArrowPosPolicy.TargetCenter;
-                        break;
-                    case RelativePos.ALIGN_TOP:
-                        outProp.arrowPosPolicy = ArrowPosPolicy.SelfBegin;
-                        break;
-                    case RelativePos.ALIGN_BOTTOM:
-                        outProp.arrowPosPolicy = ArrowPosPolicy.SelfEnd;
-                        break;
-                    default:
-                        outProp.arrowPosPolicy = ArrowPosPolicy.TargetCenter;
-                        break;
-                }
-                break;
-            default:
-                outProp.arrowPosPolicy = ArrowPosPolicy.TargetCenter;
-                break;
+    /**
+     * @return {@link #measureContent(int, int)} 得到的内容宽度，不受显示后窗口重新测量的影响
+     */
+    int getMeasuredContentWidth() {
+        return mMeasureCache.getWidth();
+    }
+
+    int getMeasuredContentHeight() {
+        return mMeasureCache.getHeight();
+    }
+
+    /**
+     * 计算摆放，与上次计算的输入（屏幕、目标位置、对齐方式、边距与内容尺寸）一致时直接沿用结果
+     */
+    private PopupProp computePopupProp(int screenWidth, int screenHeight, int navigationBarHeight, Rect anchorRect,
+                                       RelativePos relativePos, int marginH, int marginV) {
+        final PopupProp outProp = mPopupProp;
+        final int horizontalRelate = relativePos.getHorizontalRelate();
+        final int verticalRelate = relativePos.getVerticalRelate();
+        if (mPropCached
+                && mCachedScreenWidth == screenWidth && mCachedScreenHeight == screenHeight
+                && mCachedNavigationBarHeight == navigationBarHeight && mCachedPadding == mPadding
+                && mCachedAnchorLeft == anchorRect.left && mCachedAnchorTop == anchorRect.top
+                && mCachedAnchorRight == anchorRect.right && mCachedAnchorBottom == anchorRect.bottom
+                && mCachedContentWidth == mContentWidth && mCachedContentHeight == mContentHeight
+                && mCachedHorizontalRelate == horizontalRelate && mCachedVerticalRelate == verticalRelate
+                && mCachedMarginH == marginH && mCachedMarginV == marginV) {
+            return outProp;
         }
+
+        final boolean traced = BubbleTrace.begin(BubbleTrace.POPUP_PLACE);
+        BubblePlacement.getPopupProp(screenWidth, screenHeight, navigationBarHeight,
+                anchorRect.left, anchorRect.top, anchorRect.right, anchorRect.bottom,
+                mContentWidth, mContentHeight, horizontalRelate, verticalRelate,
+                marginH, marginV, mPadding, outProp);
+        BubbleTrace.end(traced);
+        mPropCached = true;
+        mCachedScreenWidth = screenWidth;
+        mCachedScreenHeight = screenHeight;
+        mCachedNavigationBarHeight = navigationBarHeight;
+        mCachedPadding = mPadding;
+        mCachedAnchorLeft = anchorRect.left;
+        mCachedAnchorTop = anchorRect.top;
+        mCachedAnchorRight = anchorRect.right;
+        mCachedAnchorBottom = anchorRect.bottom;
+        mCachedContentWidth = mContentWidth;
+        mCachedContentHeight = mContentHeight;
+        mCachedHorizontalRelate = horizontalRelate;
+        mCachedVerticalRelate = verticalRelate;
+        mCachedMarginH = marginH;
+        mCachedMarginV = marginV;
+        return outProp;
     }
 
-    private static void getPopupPropOfX(int screenWidth, Rect anchorRect, int contentWidth, RelativePos relativePos, int marginH, final int padding, PopupProp outProp) {
-        switch (relativePos.getHorizontalRelate()) {
-            case RelativePos.ALIGN_LEFT:
-                outProp.gravity |= Gravity.LEFT;
-                outProp.x = anchorRect.left + marginH;
-                break;
-            case RelativePos.TO_RIGHT_OF:
-                outProp.gravity |= Gravity.LEFT;
-                outProp.x = anchorRect.right + marginH;
-                break;
-            case RelativePos.TO_LEFT_OF:
-                outProp.gravity |= Gravity.RIGHT;
-                outProp.x = screenWidth - anchorRect.left + marginH;
-                break;
-            case RelativePos.ALIGN_RIGHT:
-                outProp.gravity |= Gravity.RIGHT;
-                outProp.x = screenWidth - anchorRect.right + marginH;
-                break;
-            case CENTER_HORIZONTAL:
-                if (anchorRect.centerX() < contentWidth / 2 + padding) {
-                    outProp.gravity |= Gravity.LEFT;
-                    outProp.x = padding;
-                } else if (screenWidth - anchorRect.centerX() < contentWidth / 2 + padding) {
-                    outProp.gravity |= Gravity.RIGHT;
-                    outProp.x = padding;
-                } else {
-                    outProp.gravity = Gravity.CENTER_HORIZONTAL;
-                    outProp.x = anchorRect.centerX() - screenWidth / 2;
-                }
-                break;
+    private void startFollowing(View anchor, RelativePos relativePos, int marginH, int marginV) {
+        mFollowingAnchor = anchor;
+        mRelativePos = relativePos;
+        mMarginH = marginH;
+        mMarginV = marginV;
+        mFollowTracker = BubbleAnchorTracker.of(anchor);
+        if (mFollowTracker != null) {
+            mFollowTracker.register(mFollowClient);
         }
+        anchor.addOnAttachStateChangeListener(mAnchorAttachListener);
     }
 
-    private static void getPopupPropOfMaxWidth(int screenWidth, Rect anchorRect, RelativePos relativePos, int marginH, final int padding, PopupProp outProp) {
-        switch (relativePos.getHorizontalRelate()) {
-            case RelativePos.ALIGN_LEFT:
-                outProp.maxWidth = screenWidth - anchorRect.left - marginH - padding;
-                break;
-            case RelativePos.TO_RIGHT_OF:
-                outProp.maxWidth = screenWidth - anchorRect.right - marginH - padding;
-                break;
-            case RelativePos.TO_LEFT_OF:
-                outProp.maxWidth = anchorRect.left - marginH - padding;
-                break;
-            case RelativePos.ALIGN_RIGHT:
-                outProp.maxWidth = anchorRect.right - marginH - padding;
-                break;
-            case CENTER_HORIZONTAL:
-                outProp.maxWidth = screenWidth - 2 * padding;
-                break;
+    private void stopFollowing() {
+        if (mFollowTracker != null) {
+            mFollowTracker.unregister(mFollowClient);
+            mFollowTracker = null;
+        }
+        if (mFollowingAnchor != null) {
+            mFollowingAnchor.removeOnAttachStateChangeListener(mAnchorAttachListener);
+            mFollowingAnchor = null;
         }
+        mRelativePos = null;
     }
 
-    private static void getPopupPropOfY(int screenHeight, int navigationBarHeight, Rect anchorRect, RelativePos relativePos, int marginV, PopupProp outProp) {
-        switch (relativePos.getVerticalRelate()) {
-            case RelativePos.ALIGN_TOP:
-                outProp.gravity |= Gravity.TOP;
-                outProp.y = anchorRect.top + marginV;
-                break;
-            case RelativePos.BELOW:
-                outProp.gravity |= Gravity.TOP;
-                outProp.y = anchorRect.bottom + marginV;
-                break;
-            case RelativePos.ALIGN_BOTTOM:
-                outProp.gravity |= Gravity.BOTTOM;
-                outProp.y = screenHeight + navigationBarHeight - anchorRect.bottom + marginV;
-                break;
-            case RelativePos.ABOVE:
-                outProp.gravity |= Gravity.BOTTOM;
-                outProp.y = screenHeight + navigationBarHeight - anchorRect.top + marginV;
-                break;
-            case RelativePos.CENTER_VERTICAL:
-                outProp.gravity |= Gravity.CENTER_VERTICAL;
-                outProp.y = anchorRect.centerY() - navigationBarHeight / 2 - screenHeight / 2;
-                break;
+    /**
+     * 目标在窗口中移动后，按显示时的参数重新计算位置并原地移动弹窗
+     * 内容尺寸沿用显示时的测量结果；对齐方式变化时 update 无法生效，只能无动画地重新弹出
+     *
+     * @param anchorRect 目标在其窗口中的区域
+     */
+    private void followTo(Rect anchorRect) {
+        final View anchor = mFollowingAnchor;
+        if (anchor == null || !isShowing()) {
+            return;
+        }
+
+        if (!anchor.getGlobalVisibleRect(mVisibleRect)) {
+            dismiss(); // 已完全滚出可见区域
+            return;
+        }
+
+        final DisplayGeometry displayGeometry = DisplayGeometry.of(anchor);
+        final PopupProp outProp = computePopupProp(displayGeometry.getScreenWidth(), displayGeometry.getScreenHeight(),
+                displayGeometry.getNavigationBarHeight(), anchorRect, mRelativePos, mMarginH, mMarginV);
+        final int width = Math.min(mContentWidth, outProp.maxWidth);
+        if (outProp.gravity == mShownGravity && outProp.x == mShownX && outProp.y == mShownY && width == mShownWidth) {
+            return;
+        }
+
+        if (outProp.gravity == mShownGravity) {
+            update(outProp.x, outProp.y, width, -1);
+        } else {
+            mRepositioning = true;
+            final int animationStyle = getAnimationStyle();
+            setAnimationStyle(0);
+            super.dismiss();
+            setWidth(width);
+            showAtLocation(anchor, outProp.gravity, outProp.x, outProp.y);
+            setAnimationStyle(animationStyle);
+            mRepositioning = false;
+        }
+        mShownGravity = outProp.gravity;
+        mShownX = outProp.x;
+        mShownY = outProp.y;
+        mShownWidth = width;
+    }
+
+    /**
+     * 以目标所在窗口的根View作为参照，两者的相对位置变化即目标在窗口中移动
+     * 气泡的箭头位置由其自身的跟踪在弹窗移动后更新
+     */
+    private class FollowClient implements BubbleAnchorTracker.Client {
+        @Override
+        public View getTrackedView() {
+            return mFollowingAnchor != null ? mFollowingAnchor.getRootView() : null;
+        }
+
+        @Override
+        public View getAnchorView() {
+            return mFollowingAnchor;
+        }
+
+        @Override
+        public void onAnchorMoved(Rect selfRect, Rect anchorRect) {
+            mAnchorRect.set(anchorRect);
+            mAnchorRect.offset(-selfRect.left, -selfRect.top);
+            followTo(mAnchorRect);
+        }
+
+        @Override
+        public BubbleMetrics getMetrics() {
+            return mBubbleView.getMetrics();
         }
     }
 
+    private Rect getRectInWindow(View view) {
+        final int[] location = mLocation;
+        view.getLocationInWindow(location);
+        mShowAnchorRect.set(location[0], location[1], location[0] + view.getWidth(), location[1] + view.getHeight());
+        return mShowAnchorRect;
+    }
+
     private static int getAnimationStyle(ArrowDirection direction) {
         switch (direction) {
             case Up:
@@ -359,28 +579,4 @@ public class BubblePopupWindow extends PopupWindow {
                 return R.style.AnimationArrowNone;
         }
     }
-
-    /**
-     * 获得用于补偿位置偏移的 NavigationBar 高度
-     * 在 Android5.0 以上系统，showAtLocation 如果使用了 Gravity.BOTTOM 或 Gravity.CENTER_VERTICAL 可能出现显示偏移的Bug
-     * 偏移值和 NavigationBar 高度有关
-     *
-     * @param view 目标View
-     * @return 如果需要修正且存在NavigationBar则返回高度，否则为0
-     */
-    private static int getNavigationBarHeightDelta(View view) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT_WATCH) {
-            return Utils.getNavigationBarHeight(view);
-        } else {
-            return 0;
-        }
-    }
-
-    private class PopupProp {
-        ArrowDirection direction;
-        ArrowPosPolicy arrowPosPolicy;
-        int animationStyle;
-        int maxWidth;
-        int gravity, x, y;
-    }
 }
@@ -0,0 +1,256 @@
+package com.cpiz.android.bubbleview;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import com.cpiz.android.bubbleview.core.BoxBlur;
+import com.cpiz.android.bubbleview.core.BubbleGeometry;
+import com.cpiz.android.bubbleview.core.BubbleShape;
+import com.cpiz.android.bubbleview.core.PathBuffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Android 5.0 以下的气泡阴影
+ * 将气泡轮廓模糊一次后存为只含透明度的位图，绘制时拉伸到实际尺寸并以阴影色画在填充下方，
+ * 避免每帧使用 BlurMaskFilter 和软件图层
+ * 位图按尺寸分档、圆角、箭头与阴影半径在进程内共享缓存，内存紧张时释放
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+final class BubbleShadow {
+    private static final int MAX_CACHE_BYTES = 1024 * 1024;
+    // 尺寸与箭头位置的分档粒度，档内差异由拉伸补足，模糊后无法察觉
+    private static final int SIZE_BUCKET = 16;
+    private static final int ARROW_BUCKET = 4;
+    // 阴影本身是模糊的，按一半分辨率生成即可
+    private static final int DOWNSAMPLE = 2;
+
+    static final int SHADOW_ALPHA = 0x44;
+
+    private static final BubbleLruCache<Key, Bitmap> sCache = new BubbleLruCache<Key, Bitmap>(MAX_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(Key key, Bitmap value) {
+            return value.getRowBytes() * value.getHeight();
+        }
+    };
+
+    private static boolean sTrimRegistered = false;
+
+    private BubbleShadow() {
+    }
+
+    /**
+     * 阴影位图的参数，尺寸与箭头位置为分档后的取值
+     */
+    static final class Key {
+        int width;
+        int height;
+        float arrowHeight;
+        float arrowWidth;
+        int arrowDelta;
+        float topLeftRadius;
+        float topRightRadius;
+        float bottomRightRadius;
+        float bottomLeftRadius;
+        int arrowDirection;
+        float elevation;
+
+        void set(Key other) {
+            width = other.width;
+            height = other.height;
+            arrowHeight = other.arrowHeight;
+            arrowWidth = other.arrowWidth;
+            arrowDelta = other.arrowDelta;
+            topLeftRadius = other.topLeftRadius;
+            topRightRadius = other.topRightRadius;
+            bottomRightRadius = other.bottomRightRadius;
+            bottomLeftRadius = other.bottomLeftRadius;
+            arrowDirection = other.arrowDirection;
+            elevation = other.elevation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key key = (Key) o;
+            return key.width == width
+                    && key.height == height
+                    && Float.compare(key.arrowHeight, arrowHeight) == 0
+                    && Float.compare(key.arrowWidth, arrowWidth) == 0
+                    && key.arrowDelta == arrowDelta
+                    && Float.compare(key.topLeftRadius, topLeftRadius) == 0
+                    && Float.compare(key.topRightRadius, topRightRadius) == 0
+                    && Float.compare(key.bottomRightRadius, bottomRightRadius) == 0
+                    && Float.compare(key.bottomLeftRadius, bottomLeftRadius) == 0
+                    && key.arrowDirection == arrowDirection
+                    && Float.compare(key.elevation, elevation) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = width;
+            result = 31 * result + height;
+            result = 31 * result + Float.floatToIntBits(arrowHeight);
+            result = 31 * result + Float.floatToIntBits(arrowWidth);
+            result = 31 * result + arrowDelta;
+            result = 31 * result + Float.floatToIntBits(topLeftRadius);
+            result = 31 * result + Float.floatToIntBits(topRightRadius);
+            result = 31 * result + Float.floatToIntBits(bottomRightRadius);
+            result = 31 * result + Float.floatToIntBits(bottomLeftRadius);
+            result = 31 * result + arrowDirection;
+            result = 31 * result + Float.floatToIntBits(elevation);
+            return result;
+        }
+    }
+
+    /**
+     * @return 模糊向外扩展的距离
+     */
+    static int getBlurRadius(float elevation) {
+        return (int) Math.ceil(elevation);
+    }
+
+    /**
+     * @return 阴影向下的偏移，模拟来自上方的光源
+     */
+    static int getOffsetY(float elevation) {
+        return (int) Math.ceil(elevation / 2);
+    }
+
+    /**
+     * 取得阴影在气泡四周所需的空间，气泡主体需向内缩进这些距离以免阴影被裁剪
+     */
+    static void getInsets(float elevation, Rect outInsets) {
+        if (elevation <= 0) {
+            outInsets.setEmpty();
+            return;
+        }
+
+        final int radius = getBlurRadius(elevation);
+        final int offsetY = getOffsetY(elevation);
+        outInsets.set(radius, Math.max(0, radius - offsetY), radius, radius + offsetY);
+    }
+
+    /**
+     * 将尺寸或箭头位置向上取整到所在档位
+     */
+    static int bucket(float value, int step) {
+        return (int) Math.ceil(value / step) * step;
+    }
+
+    static int bucketSize(float value) {
+        return bucket(value, SIZE_BUCKET);
+    }
+
+    static int bucketArrow(float value) {
+        return bucket(value, ARROW_BUCKET);
+    }
+
+    /**
+     * 注册内存回调，系统内存紧张时缩减或清空缓存，仅首次调用有效
+     */
+    static void registerTrimCallbacks(Context context) {
+        if (sTrimRegistered) {
+            return;
+        }
+        sTrimRegistered = true;
+        context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+                    sCache.evictAll();
+                } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW) {
+                    sCache.trimToSize(sCache.maxSize() / 2);
+                }
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                sCache.evictAll();
+            }
+        });
+    }
+
+    /**
+     * 取得阴影位图，缓存中没有时生成并放入缓存
+     *
+     * @return 只含透明度的位图，覆盖气泡分档尺寸并向四周扩展模糊半径；尺寸无效时为null
+     */
+    static Bitmap obtain(Key key) {
+        Bitmap bitmap = sCache.get(key);
+        if (bitmap == null) {
+            bitmap = render(key);
+            if (bitmap != null) {
+                Key cacheKey = new Key();
+                cacheKey.set(key);
+                sCache.put(cacheKey, bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    static void clear() {
+        sCache.evictAll();
+    }
+
+    private static Bitmap render(Key key) {
+        final int radius = getBlurRadius(key.elevation);
+        final int width = (key.width + 2 * radius) / DOWNSAMPLE;
+        final int height = (key.height + 2 * radius) / DOWNSAMPLE;
+        if (key.width <= 0 || key.height <= 0 || width <= 0 || height <= 0) {
+            return null;
+        }
+
+        // 轮廓即边线外缘，按无边线的填充形状绘制
+        final BubbleGeometry geometry = new BubbleGeometry();
+        final BubbleShape shape = geometry.getOriginalShape();
+        shape.Rect.set(radius, radius, radius + key.width, radius + key.height);
+        shape.ArrowHeight = key.arrowHeight;
+        shape.ArrowWidth = key.arrowWidth;
+        shape.ArrowDelta = key.arrowDelta;
+        shape.TopLeftRadius = key.topLeftRadius;
+        shape.TopRightRadius = key.topRightRadius;
+        shape.BottomRightRadius = key.bottomRightRadius;
+        shape.BottomLeftRadius = key.bottomLeftRadius;
+        geometry.setArrowDirection(key.arrowDirection);
+        geometry.setArrowPosPolicy(BubbleGeometry.POLICY_SELF_BEGIN);
+        geometry.updateShapes();
+
+        final PathBuffer buffer = new PathBuffer();
+        final Path path = new Path();
+        geometry.buildFillPath(buffer);
+        BubbleDrawable.replay(buffer, path, new RectF());
+
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+        final Canvas canvas = new Canvas(bitmap);
+        canvas.scale(1f / DOWNSAMPLE, 1f / DOWNSAMPLE);
+        canvas.drawPath(path, new Paint(Paint.ANTI_ALIAS_FLAG));
+
+        // 与 BlurMaskFilter 相同的半径到标准差换算
+        final float sigma = (radius * 0.57735f + 0.5f) / DOWNSAMPLE;
+        final ByteBuffer pixels = ByteBuffer.allocate(bitmap.getRowBytes() * height);
+        bitmap.copyPixelsToBuffer(pixels);
+        BoxBlur.blur(pixels.array(), width, height, bitmap.getRowBytes(), sigma);
+        pixels.rewind();
+        bitmap.copyPixelsFromBuffer(pixels);
+        return bitmap;
+    }
+}
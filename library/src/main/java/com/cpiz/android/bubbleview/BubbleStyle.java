@@ -1,5 +1,6 @@
 package com.cpiz.android.bubbleview;
 
+import android.animation.TimeInterpolator;
 import android.util.SparseArray;
 import android.view.View;
 
@@ -123,6 +124,123 @@ public interface BubbleStyle {
         }
     }
 
+    /**
+     * 气泡背景的渲染方式
+     */
+    enum RenderMode {
+        /**
+         * 按路径绘制，默认方式
+         */
+        Path(0),
+
+        /**
+         * 按样式缓存四角与箭头的位图，以九宫格拉伸绘制
+         * 适合样式固定而尺寸频繁变化的气泡，尺寸变化时无需重建路径
+         */
+        NineSlice(1);
+
+        private static final SparseArray<RenderMode> intToTypeDict = new SparseArray<>();
+
+        static {
+            for (RenderMode type : RenderMode.values()) {
+                intToTypeDict.put(type.mValue, type);
+            }
+        }
+
+        @SuppressWarnings("UnusedAssignment")
+        private int mValue = 0;
+
+        public int getValue() {
+            return mValue;
+        }
+
+        RenderMode(int value) {
+            mValue = value;
+        }
+
+        public static RenderMode valueOf(int value) {
+            RenderMode type = intToTypeDict.get(value);
+            if (type == null)
+                return RenderMode.Path;
+            return type;
+        }
+    }
+
+    /**
+     * 气泡样式的批量编辑事务
+     * 通过 {@link BubbleStyle#edit()} 获得，设置的属性暂存在事务中，调用 {@link #apply()} 后才一并生效；
+     * 同一帧内的所有修改将合并为一次刷新，并按修改的属性只做必要的更新：
+     * 仅重绘（颜色）、仅更新箭头位置、重建形状，或重新计算Padding并布局
+     */
+    interface Editor {
+        Editor setArrowDirection(ArrowDirection arrowDirection);
+
+        Editor setArrowHeight(float arrowHeight);
+
+        Editor setArrowWidth(float arrowWidth);
+
+        Editor setArrowPosPolicy(ArrowPosPolicy policy);
+
+        Editor setArrowPosDelta(float delta);
+
+        Editor setArrowTo(int viewId);
+
+        Editor setArrowTo(View view);
+
+        Editor setFillColor(int fillColor);
+
+        Editor setBorderColor(int borderColor);
+
+        Editor setBorderWidth(float borderWidth);
+
+        Editor setFillPadding(float fillPadding);
+
+        Editor setCornerRadius(float topLeft, float topRight, float bottomRight, float bottomLeft);
+
+        Editor setCornerRadius(float radius);
+
+        Editor setRenderMode(RenderMode renderMode);
+
+        /**
+         * 提交修改，在下一帧合并为一次刷新；未调用时修改不生效
+         */
+        void apply();
+    }
+
+    /**
+     * 气泡形状的过渡动画
+     * 通过 {@link BubbleStyle#animate()} 获得，设置目标值后调用 {@link #start()}，
+     * 箭头位置、箭头宽度与圆角将从当前显示的形状平滑过渡到目标值
+     * 动画过程中只重建气泡背景的路径，不触发布局，也不重复查询目标位置，每帧不分配对象
+     */
+    interface ShapeAnimator {
+        ShapeAnimator setArrowTo(int viewId);
+
+        ShapeAnimator setArrowTo(View view);
+
+        ShapeAnimator setArrowWidth(float arrowWidth);
+
+        ShapeAnimator setArrowPosDelta(float delta);
+
+        ShapeAnimator setCornerRadius(float topLeft, float topRight, float bottomRight, float bottomLeft);
+
+        ShapeAnimator setCornerRadius(float radius);
+
+        ShapeAnimator setDuration(long duration);
+
+        ShapeAnimator setInterpolator(TimeInterpolator interpolator);
+
+        /**
+         * 开始过渡，尚未布局时直接应用目标值
+         */
+        void start();
+
+        /**
+         * 取消过渡，形状直接变为目标值
+         */
+        void cancel();
+    }
+
     /**
      * 设置箭头朝向
      *
@@ -240,6 +358,15 @@ public interface BubbleStyle {
 
     float getCornerBottomRightRadius();
 
+    /**
+     * 设置气泡背景的渲染方式
+     *
+     * @param renderMode 路径绘制或九宫格位图绘制，默认路径绘制
+     */
+    void setRenderMode(RenderMode renderMode);
+
+    RenderMode getRenderMode();
+
     /**
      * 设定Padding
      * 将自动将箭头区域占用空间加入Padding，使内容能够完全被气泡包含
@@ -259,9 +386,33 @@ public interface BubbleStyle {
 
     int getPaddingBottom();
 
+    /**
+     * 开始批量编辑气泡样式
+     * 例如 {@code bubble.edit().setFillColor(color).setArrowTo(view).apply();}
+     *
+     * @return 新的编辑事务
+     */
+    Editor edit();
+
+    /**
+     * 开始设置形状过渡动画，以当前显示的形状（包括正在进行的过渡）为起点
+     * 例如 {@code bubble.animate().setArrowTo(view).setCornerRadius(radius).start();}
+     *
+     * @return 形状动画
+     */
+    ShapeAnimator animate();
+
+    /**
+     * 取得该气泡的性能统计，需先通过 {@link BubbleMetrics#setEnabled(boolean)} 启用
+     *
+     * @return 性能统计
+     */
+    BubbleMetrics getMetrics();
+
     /**
      * 请求刷新UI样式
-     * 设置好以上属性后，调用该函数进行刷新
+     * 设置好以上属性后，调用该函数立即进行完整刷新
+     * 同时修改多个属性时，建议使用 {@link #edit()} 合并刷新
      */
     void requestUpdateBubble();
 }
@@ -3,6 +3,11 @@ package com.cpiz.android.bubbleview;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.os.Build;
+import android.text.Layout;
+import android.text.PrecomputedText;
+import android.text.Spannable;
+import android.text.StaticLayout;
+import android.text.TextPaint;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.widget.TextView;
@@ -44,12 +49,133 @@ public class BubbleTextView extends TextView implements BubbleStyle, BubbleCallb
         mBubbleImpl.init(this, context, attrs);
     }
 
+    /**
+     * 文字排版参数的快照，用于在后台线程预计算文字
+     * 宽度已扣除气泡的Padding（含箭头占用的空间），与控件实际排版时一致
+     */
+    public static final class TextParams {
+        final TextPaint mPaint;
+        final int mWidth;
+        final float mSpacingMult;
+        final float mSpacingAdd;
+        final boolean mIncludePad;
+        final int mBreakStrategy;
+        final int mHyphenationFrequency;
+        final Object mPrecomputedParams; // Android 9.0 以上为 PrecomputedText.Params
+
+        TextParams(BubbleTextView view, int width) {
+            mPaint = new TextPaint(view.getPaint());
+            mWidth = width;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                mSpacingMult = view.getLineSpacingMultiplier();
+                mSpacingAdd = view.getLineSpacingExtra();
+                mIncludePad = view.getIncludeFontPadding();
+            } else {
+                mSpacingMult = 1;
+                mSpacingAdd = 0;
+                mIncludePad = true;
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                mBreakStrategy = view.getBreakStrategy();
+                mHyphenationFrequency = view.getHyphenationFrequency();
+            } else {
+                mBreakStrategy = 0;
+                mHyphenationFrequency = 0;
+            }
+            mPrecomputedParams = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P ? view.getTextMetricsParams() : null;
+        }
+
+        /**
+         * @return 文字排版可用的宽度
+         */
+        public int getWidth() {
+            return mWidth;
+        }
+    }
+
+    /**
+     * 取得当前样式下的文字排版参数，须在主线程调用
+     * 箭头朝向为 Auto 时Padding取决于上次布局的结果，预计算前宜指定固定朝向
+     *
+     * @param availableWidth 气泡最多可占用的宽度，如列表项宽度；另受 maxWidth 限制
+     * @return 参数快照，可交给后台线程调用 {@link #precomputeText(CharSequence, TextParams)}
+     */
+    public TextParams getTextParams(int availableWidth) {
+        int width = availableWidth;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && getMaxWidth() > 0) {
+            width = Math.min(width, getMaxWidth());
+        }
+        // TotalPadding 已包含气泡设置的Padding（用户Padding、箭头与阴影空间）及 CompoundDrawable
+        width -= getTotalPaddingLeft() + getTotalPaddingRight();
+        return new TextParams(this, Math.max(0, width));
+    }
+
+    /**
+     * 预计算文字的测量与排版，可在后台线程调用，如 RecyclerView 预取时
+     * Android 9.0 以上返回 PrecomputedText；更低版本按相同参数排版一次以填充系统的字形缓存，返回原文字
+     *
+     * @param text   文字
+     * @param params {@link #getTextParams(int)} 取得的参数
+     * @return 交给 {@link #setPrecomputedText(CharSequence)} 的文字
+     */
+    public static CharSequence precomputeText(CharSequence text, TextParams params) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            return PrecomputedText.create(text, (PrecomputedText.Params) params.mPrecomputedParams);
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            StaticLayout.Builder.obtain(text, 0, text.length(), params.mPaint, params.mWidth)
+                    .setBreakStrategy(params.mBreakStrategy)
+                    .setHyphenationFrequency(params.mHyphenationFrequency)
+                    .setIncludePad(params.mIncludePad)
+                    .setLineSpacing(params.mSpacingAdd, params.mSpacingMult)
+                    .build();
+        } else {
+            new StaticLayout(text, params.mPaint, params.mWidth, Layout.Alignment.ALIGN_NORMAL,
+                    params.mSpacingMult, params.mSpacingAdd, params.mIncludePad);
+        }
+        return text;
+    }
+
+    /**
+     * 设置预计算的文字，须在主线程调用
+     * 预计算后样式（字体、字号等）发生变化时，放弃预计算结果按普通文字设置
+     * 尺寸不变时气泡形状无需重建
+     *
+     * @param text {@link #precomputeText(CharSequence, TextParams)} 的结果
+     */
+    public void setPrecomputedText(CharSequence text) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P && text instanceof PrecomputedText) {
+            final PrecomputedText precomputed = (PrecomputedText) text;
+            if (!precomputed.getParams().equals(getTextMetricsParams())) {
+                // 参数不一致时 TextView 会抛出异常
+                text = precomputed.getText();
+            }
+        }
+        setText(text);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        mBubbleImpl.onMeasure();
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+    }
+
     @Override
     protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
         super.onLayout(changed, left, top, right, bottom);
         mBubbleImpl.updateDrawable(right - left, bottom - top, true);
     }
 
+    @Override
+    public boolean hasOverlappingRendering() {
+        // 与 TextView 自身的判断一致（可含 BackgroundColorSpan 等的 Spannable 文字、选中、渐隐边缘、文字阴影），
+        // 唯一的区别是背景只在气泡背景自身有重叠时计入
+        return mBubbleImpl.hasOverlappingRendering() || getText() instanceof Spannable || hasSelection()
+                || isHorizontalFadingEdgeEnabled()
+                || (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && getShadowColor() != 0);
+    }
+
     @Override
     public void setPadding(int left, int top, int right, int bottom) {
         // noinspection ConstantConditions
@@ -0,0 +1,253 @@
+package com.cpiz.android.bubbleview;
+
+import android.content.Context;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.annotation.LayoutRes;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.PopupWindow;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 依次显示一组气泡弹窗，如新手引导
+ * 当前步骤显示期间，在主线程空闲时（{@link MessageQueue.IdleHandler}）提前填充并测量下一步的内容，
+ * 切换时直接使用已准备好的弹窗，只需计算位置并显示
+ * 当前弹窗关闭（点击气泡、点击外部或调用 {@link #next()}）即进入下一步
+ * 仅可在主线程使用
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class BubbleTourQueue {
+    /**
+     * 引导步骤
+     */
+    public static final class Step {
+        final View anchor;
+        final int layoutId;
+        final RelativePos relativePos;
+        int marginH = 0, marginV = 0;
+        BubblePopupWindow popup = null; // 已准备好的弹窗
+
+        /**
+         * @param anchor      气泡箭头指向的目标
+         * @param layoutId    弹窗内容布局，根View或其子孙中须有一个气泡View
+         * @param relativePos 气泡与目标的对齐方式
+         */
+        public Step(View anchor, @LayoutRes int layoutId, RelativePos relativePos) {
+            this.anchor = anchor;
+            this.layoutId = layoutId;
+            this.relativePos = relativePos;
+        }
+
+        public Step setMargin(int marginH, int marginV) {
+            this.marginH = marginH;
+            this.marginV = marginV;
+            return this;
+        }
+    }
+
+    /**
+     * 引导过程回调
+     */
+    public interface Listener {
+        /**
+         * 弹窗内容填充后、测量前调用，可在此设置文字等内容
+         *
+         * @param index 步骤序号
+         * @param popup 弹窗
+         */
+        void onPrepare(int index, BubblePopupWindow popup);
+
+        /**
+         * 步骤已显示
+         *
+         * @param index             步骤序号
+         * @param popup             弹窗
+         * @param showLatencyNanos  从请求切换到弹窗显示完成的耗时，纳秒
+         */
+        void onStepShown(int index, BubblePopupWindow popup, long showLatencyNanos);
+
+        /**
+         * 所有步骤结束或被取消
+         */
+        void onFinished();
+    }
+
+    private final Context mContext;
+    private final ArrayList<Step> mSteps;
+    private Listener mListener = null;
+    private int mCurrent = -1;
+    private boolean mIdleScheduled = false;
+
+    private final MessageQueue.IdleHandler mIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            mIdleScheduled = false;
+            // 每次空闲只准备一步，避免长时间占用主线程
+            prepare(mCurrent + 1);
+            return false;
+        }
+    };
+
+    private final PopupWindow.OnDismissListener mOnDismissListener = new PopupWindow.OnDismissListener() {
+        @Override
+        public void onDismiss() {
+            if (mCurrent >= 0) {
+                show(mCurrent + 1, System.nanoTime());
+            }
+        }
+    };
+
+    public BubbleTourQueue(Context context, List<Step> steps) {
+        mContext = context;
+        mSteps = new ArrayList<>(steps);
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @return 当前步骤序号，未开始或已结束时为-1
+     */
+    public int getCurrentIndex() {
+        return mCurrent;
+    }
+
+    /**
+     * 从第一步开始显示
+     */
+    public void start() {
+        if (mCurrent < 0) {
+            show(0, System.nanoTime());
+        }
+    }
+
+    /**
+     * 关闭当前步骤并显示下一步
+     */
+    public void next() {
+        if (mCurrent >= 0) {
+            final BubblePopupWindow popup = mSteps.get(mCurrent).popup;
+            if (popup != null && popup.isShowing()) {
+                popup.dismiss(); // 关闭回调中切换到下一步
+            } else {
+                show(mCurrent + 1, System.nanoTime());
+            }
+        }
+    }
+
+    /**
+     * 结束引导，关闭当前弹窗并释放已准备的内容
+     */
+    public void cancel() {
+        if (mCurrent < 0) {
+            return;
+        }
+
+        final int current = mCurrent;
+        mCurrent = -1;
+        unscheduleIdle();
+        for (int i = current; i < mSteps.size(); i++) {
+            final Step step = mSteps.get(i);
+            if (step.popup != null) {
+                step.popup.setOnDismissListener(null);
+                step.popup.dismiss();
+                step.popup = null;
+            }
+        }
+        if (mListener != null) {
+            mListener.onFinished();
+        }
+    }
+
+    /**
+     * 显示指定步骤，目标已不在窗口中的步骤将被跳过
+     *
+     * @param startNanos 请求切换的时间
+     */
+    private void show(int index, long startNanos) {
+        if (mCurrent >= 0 && mCurrent < mSteps.size()) {
+            final Step previous = mSteps.get(mCurrent);
+            if (previous.popup != null) {
+                previous.popup.setOnDismissListener(null);
+                previous.popup = null;
+            }
+        }
+
+        while (index < mSteps.size() && mSteps.get(index).anchor.getWindowToken() == null) {
+            mSteps.get(index).popup = null;
+            index++;
+        }
+
+        if (index >= mSteps.size()) {
+            mCurrent = -1;
+            unscheduleIdle();
+            if (mListener != null) {
+                mListener.onFinished();
+            }
+            return;
+        }
+
+        mCurrent = index;
+        final Step step = mSteps.get(index);
+        prepare(index);
+        step.popup.setOnDismissListener(mOnDismissListener);
+        step.popup.showArrowTo(step.anchor, step.relativePos, step.marginH, step.marginV);
+        if (mListener != null) {
+            mListener.onStepShown(index, step.popup, System.nanoTime() - startNanos);
+        }
+
+        if (index + 1 < mSteps.size() && mSteps.get(index + 1).popup == null) {
+            scheduleIdle();
+        }
+    }
+
+    /**
+     * 填充并测量指定步骤的内容，已准备过的直接返回
+     */
+    private void prepare(int index) {
+        if (index < 0 || index >= mSteps.size()) {
+            return;
+        }
+
+        final Step step = mSteps.get(index);
+        if (step.popup != null) {
+            return;
+        }
+
+        final View contentView = LayoutInflater.from(mContext).inflate(step.layoutId, null);
+        final BubbleStyle bubbleView = Utils.findBubble(contentView);
+        if (bubbleView == null) {
+            throw new IllegalArgumentException("No bubble view in layout " + step.layoutId);
+        }
+
+        step.popup = new BubblePopupWindow(contentView, bubbleView);
+        if (mListener != null) {
+            mListener.onPrepare(index, step.popup);
+        }
+
+        // 以显示时相同的约束测量，显示时可直接复用测量结果
+        final DisplayGeometry displayGeometry = DisplayGeometry.of(
+                step.anchor.getWindowToken() != null ? step.anchor : mSteps.get(Math.max(mCurrent, 0)).anchor);
+        step.popup.measureContent(displayGeometry.getScreenWidth(), displayGeometry.getScreenHeight());
+    }
+
+    private void scheduleIdle() {
+        if (!mIdleScheduled) {
+            mIdleScheduled = true;
+            Looper.myQueue().addIdleHandler(mIdleHandler);
+        }
+    }
+
+    private void unscheduleIdle() {
+        if (mIdleScheduled) {
+            mIdleScheduled = false;
+            Looper.myQueue().removeIdleHandler(mIdleHandler);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.cpiz.android.bubbleview;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * 气泡关键流程的 Systrace/Perfetto 分段
+ * 开启后，背景刷新、路径重建、目标查找、位置查询与弹窗的测量、摆放将以 "Bubble:" 开头的分段出现在系统跟踪中
+ * 默认关闭，关闭时各分段点仅做一次 volatile 读取；需 Android 4.3 以上
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class BubbleTrace {
+    static final String UPDATE_DRAWABLE = "Bubble:updateDrawable";
+    static final String UPDATE_SHAPES = "Bubble:updateShapes";
+    static final String FIND_VIEW = "Bubble:findView";
+    static final String LOCATION_LOOKUP = "Bubble:locationLookup";
+    static final String POPUP_MEASURE = "Bubble:popupMeasure";
+    static final String POPUP_PLACE = "Bubble:popupPlace";
+    static final String POPUP_SHOW = "Bubble:popupShow";
+
+    private static volatile boolean sEnabled = false;
+
+    private BubbleTrace() {
+    }
+
+    /**
+     * 设置是否输出跟踪分段，默认关闭
+     *
+     * @param enabled 是否启用
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * 开始分段，须与 {@link #end(boolean)} 在同一线程成对调用
+     *
+     * @param section 分段名称，使用本类中的常量，避免拼接字符串
+     * @return 是否实际开始了分段，交给 {@link #end(boolean)}，避免中途切换开关导致不配对
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    static boolean begin(String section) {
+        if (!sEnabled) {
+            return false;
+        }
+        Trace.beginSection(section);
+        return true;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    static void end(boolean began) {
+        if (began) {
+            Trace.endSection();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.cpiz.android.bubbleview;
+
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.os.Build;
+import android.util.DisplayMetrics;
+import android.view.View;
+import android.view.WindowInsets;
+
+/**
+ * 窗口的屏幕尺寸与 NavigationBar 高度快照，每个窗口一个，保存在窗口根View的Tag中
+ * 查询 NavigationBar 需访问 Display（可能跨进程）甚至反射，这里只在配置或窗口边衬变化后重新查询，
+ * 平时取用快照只需比较几个整数
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+final class DisplayGeometry {
+    private final View mRootView;
+
+    private int mScreenWidth;
+    private int mScreenHeight;
+    private int mNavigationBarHeight;
+
+    // 快照对应的窗口尺寸、配置与边衬，任一变化即重新查询
+    private boolean mValid = false;
+    private int mRootWidth, mRootHeight;
+    private int mOrientation, mScreenWidthDp, mScreenHeightDp, mDensityDpi;
+    private int mInsetRight, mInsetBottom;
+
+    private DisplayGeometry(View rootView) {
+        mRootView = rootView;
+    }
+
+    /**
+     * 取得View所在窗口的快照，必要时刷新
+     *
+     * @param view 已添加到窗口的View
+     * @return 快照
+     */
+    static DisplayGeometry of(View view) {
+        final View rootView = view.getRootView();
+        DisplayGeometry geometry = (DisplayGeometry) rootView.getTag(R.id.bubble_display_geometry);
+        if (geometry == null) {
+            geometry = new DisplayGeometry(rootView);
+            rootView.setTag(R.id.bubble_display_geometry, geometry);
+        }
+        geometry.refreshIfNeeded(view);
+        return geometry;
+    }
+
+    int getScreenWidth() {
+        return mScreenWidth;
+    }
+
+    int getScreenHeight() {
+        return mScreenHeight;
+    }
+
+    /**
+     * 在 Android5.0 以上系统，showAtLocation 如果使用了 Gravity.BOTTOM 或 Gravity.CENTER_VERTICAL 可能出现显示偏移的Bug
+     * 偏移值和 NavigationBar 高度有关
+     *
+     * @return 如果需要修正且存在NavigationBar则返回高度，否则为0
+     */
+    int getNavigationBarHeight() {
+        return mNavigationBarHeight;
+    }
+
+    /**
+     * @param view 窗口中的View，用于查找所在的 Activity；根View（DecorView）在 Android7.0 以上无法取得 Activity
+     */
+    private void refreshIfNeeded(View view) {
+        final Configuration config = mRootView.getResources().getConfiguration();
+        int insetRight = 0, insetBottom = 0;
+        if (Build.VERSION.SDK_INT >= 23 /* M */) {
+            final WindowInsets insets = mRootView.getRootWindowInsets();
+            if (insets != null) {
+                insetRight = insets.getSystemWindowInsetRight();
+                insetBottom = insets.getSystemWindowInsetBottom();
+            }
+        }
+
+        if (mValid
+                && mRootWidth == mRootView.getWidth() && mRootHeight == mRootView.getHeight()
+                && mOrientation == config.orientation
+                && mScreenWidthDp == config.screenWidthDp && mScreenHeightDp == config.screenHeightDp
+                && mDensityDpi == config.densityDpi
+                && mInsetRight == insetRight && mInsetBottom == insetBottom) {
+            return;
+        }
+
+        mValid = true;
+        mRootWidth = mRootView.getWidth();
+        mRootHeight = mRootView.getHeight();
+        mOrientation = config.orientation;
+        mScreenWidthDp = config.screenWidthDp;
+        mScreenHeightDp = config.screenHeightDp;
+        mDensityDpi = config.densityDpi;
+        mInsetRight = insetRight;
+        mInsetBottom = insetBottom;
+
+        final DisplayMetrics metrics = Resources.getSystem().getDisplayMetrics();
+        mScreenWidth = metrics.widthPixels;
+        mScreenHeight = metrics.heightPixels;
+        mNavigationBarHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT_WATCH
+                ? Utils.getNavigationBarHeight(view) : 0;
+    }
+}
@@ -0,0 +1,38 @@
+package com.cpiz.android.bubbleview;
+
+/**
+ * 弹窗内容按屏幕尺寸测量的结果
+ * 弹窗显示后窗口会按自身的约束（如被挤压时的固定宽度）重新测量内容，View 上的测量结果随之改变，
+ * 因此摆放计算使用这里保存的尺寸，而不是内容View当前的测量结果
+ * <p>
+ * https://github.com/cpiz/BubbleView
+ */
+final class PopupMeasureCache {
+    private boolean mValid = false;
+    private int mVersion, mWidthSpec, mHeightSpec;
+    private int mWidth, mHeight;
+
+    /**
+     * @return 内容版本与测量约束均未变化时为true
+     */
+    boolean isValid(int version, int widthSpec, int heightSpec) {
+        return mValid && mVersion == version && mWidthSpec == widthSpec && mHeightSpec == heightSpec;
+    }
+
+    void set(int version, int widthSpec, int heightSpec, int width, int height) {
+        mValid = true;
+        mVersion = version;
+        mWidthSpec = widthSpec;
+        mHeightSpec = heightSpec;
+        mWidth = width;
+        mHeight = height;
+    }
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+}
@@ -2,6 +2,8 @@ package com.cpiz.android.bubbleview;
 
 import android.support.annotation.IntDef;
 
+import com.cpiz.android.bubbleview.core.BubblePlacement;
+
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 
@@ -12,27 +14,33 @@ import java.lang.annotation.RetentionPolicy;
  */
 @SuppressWarnings({"PointlessBitwiseExpression", "WeakerAccess"})
 public class RelativePos {
-    @IntDef({CENTER_HORIZONTAL, TO_LEFT_OF, TO_RIGHT_OF, ALIGN_LEFT, ALIGN_RIGHT})
+    @IntDef({CENTER_HORIZONTAL, TO_LEFT_OF, TO_RIGHT_OF, ALIGN_LEFT, ALIGN_RIGHT, AUTO})
     @Retention(RetentionPolicy.SOURCE)
     public @interface RelativeH {
     }
 
-    public static final int CENTER_HORIZONTAL = 0;
-    public static final int TO_LEFT_OF = 1;
-    public static final int TO_RIGHT_OF = 2;
-    public static final int ALIGN_LEFT = 3;
-    public static final int ALIGN_RIGHT = 4;
+    public static final int CENTER_HORIZONTAL = BubblePlacement.CENTER_HORIZONTAL;
+    public static final int TO_LEFT_OF = BubblePlacement.TO_LEFT_OF;
+    public static final int TO_RIGHT_OF = BubblePlacement.TO_RIGHT_OF;
+    public static final int ALIGN_LEFT = BubblePlacement.ALIGN_LEFT;
+    public static final int ALIGN_RIGHT = BubblePlacement.ALIGN_RIGHT;
 
-    @IntDef({CENTER_VERTICAL, ABOVE, BELOW, ALIGN_TOP, ALIGN_BOTTOM})
+    @IntDef({CENTER_VERTICAL, ABOVE, BELOW, ALIGN_TOP, ALIGN_BOTTOM, AUTO})
     @Retention(RetentionPolicy.SOURCE)
     public @interface RelativeV {
     }
 
-    public static final int CENTER_VERTICAL = 0;
-    public static final int ABOVE = 1;
-    public static final int BELOW = 2;
-    public static final int ALIGN_TOP = 3;
-    public static final int ALIGN_BOTTOM = 4;
+    public static final int CENTER_VERTICAL = BubblePlacement.CENTER_VERTICAL;
+    public static final int ABOVE = BubblePlacement.ABOVE;
+    public static final int BELOW = BubblePlacement.BELOW;
+    public static final int ALIGN_TOP = BubblePlacement.ALIGN_TOP;
+    public static final int ALIGN_BOTTOM = BubblePlacement.ALIGN_BOTTOM;
+
+    /**
+     * 自动选择，可用于水平或垂直方向
+     * 显示时根据已测量的内容尺寸，对各候选位置按屏幕内可见面积、遮挡目标与宽度挤压评分，取最优者
+     */
+    public static final int AUTO = BubblePlacement.AUTO;
 
     private int mHorizontalRelate = CENTER_HORIZONTAL;
     private int mVerticalRelate = CENTER_VERTICAL;
@@ -58,31 +66,17 @@ public class RelativePos {
         mVerticalRelate = verticalRelate;
     }
 
-    private boolean isHorizontalToTargetOf() {
-        return mHorizontalRelate == TO_LEFT_OF || mHorizontalRelate == TO_RIGHT_OF;
-    }
-
-    private boolean isVerticalToTargetOf() {
-        return mVerticalRelate == ABOVE || mVerticalRelate == BELOW;
+    /**
+     * 水平与垂直方向均自动选择，在目标的下、上、右、左四侧中择优
+     */
+    public static RelativePos auto() {
+        return new RelativePos(AUTO, AUTO);
     }
 
+    /**
+     * @return 箭头方向，含 AUTO 时须在显示时才能确定，返回 None
+     */
     public BubbleStyle.ArrowDirection getArrowDirection() {
-        if (isHorizontalToTargetOf() && !isVerticalToTargetOf()) {
-            if (mHorizontalRelate == TO_RIGHT_OF) {
-                return BubbleStyle.ArrowDirection.Left;
-            } else if (mHorizontalRelate == TO_LEFT_OF) {
-                return BubbleStyle.ArrowDirection.Right;
-            }
-        }
-
-        if (!isHorizontalToTargetOf() && isVerticalToTargetOf()) {
-            if (mVerticalRelate == BELOW) {
-                return BubbleStyle.ArrowDirection.Up;
-            } else if (mVerticalRelate == ABOVE) {
-                return BubbleStyle.ArrowDirection.Down;
-            }
-        }
-
-        return BubbleStyle.ArrowDirection.None;
+        return BubbleStyle.ArrowDirection.valueOf(BubblePlacement.getArrowDirection(mHorizontalRelate, mVerticalRelate));
     }
 }
@@ -6,9 +6,13 @@ import android.content.ContextWrapper;
 import android.content.res.Resources;
 import android.graphics.Point;
 import android.os.Build;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.Display;
 import android.view.View;
+import android.view.ViewGroup;
+
+import java.lang.reflect.Method;
 
 /**
  * 工具类
@@ -19,6 +23,14 @@ import android.view.View;
 public class Utils {
     private static final String TAG = "Utils";
 
+    // 系统的 DisplayMetrics 对象在配置变化时原地更新，缓存引用即可
+    private static DisplayMetrics sSystemMetrics = null;
+
+    // 旧系统上查询屏幕实际尺寸的反射方法，只查找一次
+    private static boolean sRawSizeMethodsResolved = false;
+    private static Method sGetRawWidth = null;
+    private static Method sGetRawHeight = null;
+
     /**
      * 范围内取有效值
      *
@@ -38,7 +50,10 @@ public class Utils {
      * @return px值
      */
     public static int dp2px(int dp) {
-        return (int) (dp * Resources.getSystem().getDisplayMetrics().density);
+        if (sSystemMetrics == null) {
+            sSystemMetrics = Resources.getSystem().getDisplayMetrics();
+        }
+        return (int) (dp * sSystemMetrics.density);
     }
 
     /**
@@ -60,8 +75,11 @@ public class Utils {
                     display.getRealSize(size); // getRealMetrics is only available with API 17 and +
                 } else {
                     try {
-                        size.x = (Integer) Display.class.getMethod("getRawWidth").invoke(display);
-                        size.y = (Integer) Display.class.getMethod("getRawHeight").invoke(display);
+                        resolveRawSizeMethods();
+                        if (sGetRawWidth != null && sGetRawHeight != null) {
+                            size.x = (Integer) sGetRawWidth.invoke(display);
+                            size.y = (Integer) sGetRawHeight.invoke(display);
+                        }
                     } catch (Exception e) {
                         Log.w(TAG, "getNavigationBarHeight: error", e);
                     }
@@ -86,6 +104,42 @@ public class Utils {
         return 0;
     }
 
+    /**
+     * 查找View自身或其子孙中的第一个气泡View
+     *
+     * @param view 根View
+     * @return 气泡View，没有时为null
+     */
+    static BubbleStyle findBubble(View view) {
+        if (view instanceof BubbleStyle) {
+            return (BubbleStyle) view;
+        }
+
+        if (view instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                final BubbleStyle bubble = findBubble(group.getChildAt(i));
+                if (bubble != null) {
+                    return bubble;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void resolveRawSizeMethods() {
+        if (sRawSizeMethodsResolved) {
+            return;
+        }
+        sRawSizeMethodsResolved = true;
+        try {
+            sGetRawWidth = Display.class.getMethod("getRawWidth");
+            sGetRawHeight = Display.class.getMethod("getRawHeight");
+        } catch (NoSuchMethodException e) {
+            Log.w(TAG, "getNavigationBarHeight: error", e);
+        }
+    }
+
     private static Activity getActivity(View view) {
         Context context = view.getContext();
         while (context instanceof ContextWrapper) {
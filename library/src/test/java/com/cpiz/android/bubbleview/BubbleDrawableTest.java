@@ -0,0 +1,52 @@
+package com.cpiz.android.bubbleview;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BubbleDrawableTest {
+    @Before
+    public void setUp() {
+        BubbleMetrics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        BubbleMetrics.setEnabled(false);
+        BubbleMetrics.global().reset();
+    }
+
+    @Test
+    public void testColorOnlyChangeShouldSkipRebuild() {
+        BubbleMetrics metrics = new BubbleMetrics();
+        BubbleDrawable drawable = new BubbleDrawable(metrics);
+        drawable.resetRect(200, 100);
+        drawable.setArrowDirection(BubbleStyle.ArrowDirection.Up);
+        drawable.setArrowHeight(12);
+        drawable.setArrowWidth(20);
+        Assert.assertTrue(drawable.updateShapes());
+        Assert.assertEquals(1, metrics.getCount(BubbleMetrics.PATH_REBUILD));
+        Assert.assertEquals(0, metrics.getCount(BubbleMetrics.PATH_REBUILD_SKIPPED));
+
+        drawable.setFillColor(0xFFFF0000);
+        drawable.setBorderColor(0xFF00FF00);
+        Assert.assertFalse(drawable.updateShapes());
+        Assert.assertEquals(1, metrics.getCount(BubbleMetrics.PATH_REBUILD));
+        Assert.assertEquals(1, metrics.getCount(BubbleMetrics.PATH_REBUILD_SKIPPED));
+        Assert.assertEquals(0, metrics.getTotalNanos(BubbleMetrics.PATH_REBUILD_SKIPPED));
+    }
+
+    @Test
+    public void testShapeChangeShouldRebuild() {
+        BubbleMetrics metrics = new BubbleMetrics();
+        BubbleDrawable drawable = new BubbleDrawable(metrics);
+        drawable.resetRect(200, 100);
+        drawable.updateShapes();
+
+        drawable.resetRect(200, 120);
+        Assert.assertTrue(drawable.updateShapes());
+        Assert.assertEquals(2, metrics.getCount(BubbleMetrics.PATH_REBUILD));
+        Assert.assertEquals(0, metrics.getCount(BubbleMetrics.PATH_REBUILD_SKIPPED));
+    }
+}
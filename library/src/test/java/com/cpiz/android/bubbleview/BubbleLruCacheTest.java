@@ -0,0 +1,42 @@
+package com.cpiz.android.bubbleview;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BubbleLruCacheTest {
+    @Test
+    public void testGetShouldCountHitsAndMisses() {
+        BubbleLruCache<String, Integer> cache = new BubbleLruCache<>(2);
+        cache.put("a", 1);
+        Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals(1, cache.hitCount());
+        Assert.assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    public void testPutShouldEvictLeastRecentlyUsedWhenFull() {
+        BubbleLruCache<String, Integer> cache = new BubbleLruCache<>(2);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a");
+        cache.put("c", 3);
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+        Assert.assertEquals(Integer.valueOf(3), cache.get("c"));
+        Assert.assertEquals(1, cache.evictionCount());
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testResizeShouldTrimEntries() {
+        BubbleLruCache<String, Integer> cache = new BubbleLruCache<>(3);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        cache.resize(1);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(1, cache.maxSize());
+        Assert.assertEquals(Integer.valueOf(3), cache.get("c"));
+    }
+}
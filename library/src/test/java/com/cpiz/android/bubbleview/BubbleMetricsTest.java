@@ -0,0 +1,46 @@
+package com.cpiz.android.bubbleview;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BubbleMetricsTest {
+    @After
+    public void tearDown() {
+        BubbleMetrics.setEnabled(false);
+        BubbleMetrics.setListener(null);
+        BubbleMetrics.global().reset();
+    }
+
+    @Test
+    public void testDisabledShouldRecordNothing() {
+        BubbleMetrics metrics = new BubbleMetrics();
+        metrics.end(BubbleMetrics.DRAW, BubbleMetrics.start());
+        Assert.assertEquals(0, metrics.getCount(BubbleMetrics.DRAW));
+        Assert.assertEquals(0, BubbleMetrics.global().getCount(BubbleMetrics.DRAW));
+    }
+
+    @Test
+    public void testEnabledShouldRecordToInstanceGlobalAndListener() {
+        final long[] notified = new long[1];
+        BubbleMetrics.setEnabled(true);
+        BubbleMetrics.setListener(new BubbleMetrics.Listener() {
+            @Override
+            public void onEvent(BubbleMetrics metrics, int event, long durationNanos) {
+                notified[0]++;
+            }
+        });
+
+        BubbleMetrics a = new BubbleMetrics();
+        BubbleMetrics b = new BubbleMetrics();
+        a.end(BubbleMetrics.PATH_REBUILD, BubbleMetrics.start());
+        a.end(BubbleMetrics.PATH_REBUILD, BubbleMetrics.start());
+        b.end(BubbleMetrics.PATH_REBUILD, BubbleMetrics.start());
+
+        Assert.assertEquals(2, a.getCount(BubbleMetrics.PATH_REBUILD));
+        Assert.assertEquals(1, b.getCount(BubbleMetrics.PATH_REBUILD));
+        Assert.assertEquals(3, BubbleMetrics.global().getCount(BubbleMetrics.PATH_REBUILD));
+        Assert.assertTrue(a.getMaxNanos(BubbleMetrics.PATH_REBUILD) <= a.getTotalNanos(BubbleMetrics.PATH_REBUILD));
+        Assert.assertEquals(3, notified[0]);
+    }
+}
@@ -0,0 +1,58 @@
+package com.cpiz.android.bubbleview;
+
+import com.cpiz.android.bubbleview.core.BubblePlacement;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PopupMeasureCacheTest {
+    private static final int SCREEN_WIDTH = 1080;
+    private static final int SCREEN_HEIGHT = 1920;
+    private static final int PADDING = 16;
+    private static final int WIDTH_SPEC = 1;
+    private static final int HEIGHT_SPEC = 2;
+
+    @Test
+    public void testIsValidShouldRequireSameVersionAndSpecs() {
+        PopupMeasureCache cache = new PopupMeasureCache();
+        Assert.assertFalse(cache.isValid(0, WIDTH_SPEC, HEIGHT_SPEC));
+        cache.set(0, WIDTH_SPEC, HEIGHT_SPEC, 900, 100);
+        Assert.assertTrue(cache.isValid(0, WIDTH_SPEC, HEIGHT_SPEC));
+        Assert.assertFalse(cache.isValid(1, WIDTH_SPEC, HEIGHT_SPEC));
+        Assert.assertFalse(cache.isValid(0, WIDTH_SPEC + 1, HEIGHT_SPEC));
+        Assert.assertFalse(cache.isValid(0, WIDTH_SPEC, HEIGHT_SPEC + 1));
+    }
+
+    @Test
+    public void testReshowAfterSquashedShowShouldPlaceWithNaturalWidth() {
+        // 内容按屏幕测量的自然宽度为 900
+        PopupMeasureCache cache = new PopupMeasureCache();
+        cache.set(0, WIDTH_SPEC, HEIGHT_SPEC, 900, 100);
+
+        // 首次显示在靠右的目标旁，宽度不足被挤压，窗口随后按挤压后的宽度重新测量内容
+        BubblePlacement.PopupProp squashed = new BubblePlacement.PopupProp();
+        BubblePlacement.getPopupProp(SCREEN_WIDTH, SCREEN_HEIGHT, 0, 700, 400, 760, 440,
+                cache.getWidth(), cache.getHeight(), BubblePlacement.ALIGN_LEFT, BubblePlacement.BELOW,
+                0, 0, PADDING, squashed);
+        Assert.assertTrue(squashed.maxWidth < 900);
+        final int windowMeasuredWidth = squashed.maxWidth;
+
+        // 再次显示在有足够空间的目标下方，约束与版本未变，沿用按屏幕测量的尺寸
+        Assert.assertTrue(cache.isValid(0, WIDTH_SPEC, HEIGHT_SPEC));
+        BubblePlacement.PopupProp reshown = new BubblePlacement.PopupProp();
+        BubblePlacement.getPopupProp(SCREEN_WIDTH, SCREEN_HEIGHT, 0, 300, 400, 360, 440,
+                cache.getWidth(), cache.getHeight(), BubblePlacement.CENTER_HORIZONTAL, BubblePlacement.BELOW,
+                0, 0, PADDING, reshown);
+        Assert.assertTrue(reshown.maxWidth >= 900);
+        // 900 宽的弹窗无法以目标为中心，应靠左显示
+        Assert.assertEquals(BubblePlacement.GRAVITY_LEFT, reshown.gravity & BubblePlacement.GRAVITY_LEFT);
+        Assert.assertEquals(PADDING, reshown.x);
+
+        // 若误用窗口挤压后的测量结果，弹窗会以目标为中心，与实际显示的自然宽度不符
+        BubblePlacement.PopupProp wrong = new BubblePlacement.PopupProp();
+        BubblePlacement.getPopupProp(SCREEN_WIDTH, SCREEN_HEIGHT, 0, 300, 400, 360, 440,
+                windowMeasuredWidth, cache.getHeight(), BubblePlacement.CENTER_HORIZONTAL, BubblePlacement.BELOW,
+                0, 0, PADDING, wrong);
+        Assert.assertTrue(reshown.x != wrong.x);
+    }
+}